@@ -0,0 +1,20 @@
+@echo off
+echo Running Library Management System tests...
+
+if not exist "build-test" mkdir build-test
+
+javac -d build-test src/*.java test/*.java
+if %ERRORLEVEL% neq 0 (
+    echo Compilation failed!
+    pause
+    exit /b 1
+)
+
+java -cp build-test RunTests
+if %ERRORLEVEL% neq 0 (
+    echo Tests failed!
+    pause
+    exit /b 1
+)
+
+pause
\ No newline at end of file
@@ -0,0 +1,166 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Path-compressed trie of lowercase strings (titles, authors, member names) for type-ahead.
+// Every node counts the live entries beneath it, so a completion walk never enters an empty
+// branch and stops after `limit` hits, independent of how many strings are indexed.
+class AutocompleteIndex {
+    private final Node root;
+
+    AutocompleteIndex() {
+        this.root = new Node("");
+    }
+
+    void add(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return;
+        }
+        String key = value.trim().toLowerCase();
+        Node node = root;
+        String rest = key;
+        List<Node> path = new ArrayList<>();
+        path.add(node);
+        while (!rest.isEmpty()) {
+            Node child = node.child(rest.charAt(0));
+            if (child == null) {
+                child = new Node(rest);
+                node.addChild(child);
+            } else {
+                int common = commonPrefix(child.label, rest);
+                if (common < child.label.length()) {
+                    child = node.split(child, common);
+                }
+            }
+            rest = rest.substring(child.label.length());
+            node = child;
+            path.add(node);
+        }
+        
+        if (node.references == 0) {
+            node.display = value.trim();
+            for (Node onPath : path) {
+                onPath.count++;
+            }
+        }
+        node.references++;
+    }
+
+    void remove(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return;
+        }
+        String rest = value.trim().toLowerCase();
+        Node node = root;
+        List<Node> path = new ArrayList<>();
+        path.add(node);
+        while (!rest.isEmpty()) {
+            node = node.child(rest.charAt(0));
+            if (node == null || !rest.startsWith(node.label)) {
+                return;
+            }
+            rest = rest.substring(node.label.length());
+            path.add(node);
+        }
+        
+        if (node.references == 0) {
+            return;
+        }
+        node.references--;
+        if (node.references == 0) {
+            node.display = null;
+            for (Node onPath : path) {
+                onPath.count--;
+            }
+        }
+    }
+
+    // Up to limit indexed strings starting with the prefix (case-insensitive), alphabetically
+    List<String> complete(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        if (prefix == null || limit <= 0) {
+            return result;
+        }
+        String rest = prefix.trim().toLowerCase();
+        Node node = root;
+        while (!rest.isEmpty()) {
+            node = node.child(rest.charAt(0));
+            if (node == null) {
+                return result;
+            }
+            if (rest.startsWith(node.label)) {
+                rest = rest.substring(node.label.length());
+            } else if (node.label.startsWith(rest)) {
+                rest = "";
+            } else {
+                return result;
+            }
+        }
+        collect(node, result, limit);
+        return result;
+    }
+
+    private void collect(Node node, List<String> result, int limit) {
+        if (node.display != null) {
+            result.add(node.display);
+        }
+        for (int i = 0; i < node.size && result.size() < limit; i++) {
+            if (node.children[i].count > 0) {
+                collect(node.children[i], result, limit);
+            }
+        }
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static class Node {
+        String label;
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        int size;
+        int count;       // Live entries in this subtree
+        int references;  // How many books/members share this exact string
+        String display;  // Original spelling of the entry ending here
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        Node child(char c) {
+            int pos = Arrays.binarySearch(keys, 0, size, c);
+            return pos >= 0 ? children[pos] : null;
+        }
+
+        void addChild(Node child) {
+            char c = child.label.charAt(0);
+            int pos = -Arrays.binarySearch(keys, 0, size, c) - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(2, size * 2));
+                children = Arrays.copyOf(children, Math.max(2, size * 2));
+            }
+            System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+            System.arraycopy(children, pos, children, pos + 1, size - pos);
+            keys[pos] = c;
+            children[pos] = child;
+            size++;
+        }
+
+        // Splits child's edge after `at` characters and returns the new intermediate node
+        Node split(Node child, int at) {
+            Node middle = new Node(child.label.substring(0, at));
+            middle.count = child.count;
+            child.label = child.label.substring(at);
+            middle.addChild(child);
+            int pos = Arrays.binarySearch(keys, 0, size, middle.label.charAt(0));
+            children[pos] = middle;
+            return middle;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,36 @@
+import java.util.BitSet;
+
+// Dense bitmap of available books keyed by book ordinal, with a running count of set bits.
+// Synchronized because circulation on different books updates it concurrently.
+class AvailabilityIndex {
+    private final BitSet available;
+    private int count;
+
+    AvailabilityIndex() {
+        this.available = new BitSet();
+        this.count = 0;
+    }
+
+    synchronized void set(int ordinal, boolean isAvailable) {
+        if (available.get(ordinal) == isAvailable) {
+            return;
+        }
+        available.set(ordinal, isAvailable);
+        count += isAvailable ? 1 : -1;
+    }
+
+    // Reads the book's state inside the lock, so racing copy updates on the same book
+    // always leave the bit matching whichever update was applied last
+    synchronized void refresh(Book book) {
+        set(book.getOrdinal(), book.isAvailable());
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    // Next available ordinal at or after fromOrdinal, or -1 if there is none
+    synchronized int next(int fromOrdinal) {
+        return available.nextSetBit(fromOrdinal);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,198 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Ranked full-text index over title, author, genre and publisher using Okapi BM25 scoring
+class Bm25Index {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Map<String, Postings> postings; // Concurrent, so optimistic queries can walk it while a writer updates it
+    private int[] docLengths; // Token count per ordinal, 0 when removed
+    private int docCount;
+    private long totalLength;
+
+    Bm25Index() {
+        this.postings = new ConcurrentHashMap<>();
+        this.docLengths = new int[16];
+        this.docCount = 0;
+        this.totalLength = 0;
+    }
+
+    void add(int ordinal, Book book) {
+        Map<String, Integer> termFreqs = new HashMap<>();
+        int length = 0;
+        for (String field : fields(book)) {
+            for (String token : tokenize(field)) {
+                termFreqs.merge(token, 1, Integer::sum);
+                length++;
+            }
+        }
+        
+        for (Map.Entry<String, Integer> entry : termFreqs.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), k -> new Postings()).add(ordinal, entry.getValue());
+        }
+        if (ordinal >= docLengths.length) {
+            docLengths = Arrays.copyOf(docLengths, Math.max(ordinal + 1, docLengths.length * 2));
+        }
+        docLengths[ordinal] = length;
+        docCount++;
+        totalLength += length;
+    }
+
+    // The book must still hold the field values it was indexed with
+    void remove(int ordinal, Book book) {
+        for (String field : fields(book)) {
+            for (String token : tokenize(field)) {
+                Postings list = postings.get(token);
+                if (list != null && list.remove(ordinal) && list.size == 0) {
+                    postings.remove(token);
+                }
+            }
+        }
+        totalLength -= docLengths[ordinal];
+        docLengths[ordinal] = 0;
+        docCount--;
+    }
+
+    // Returns up to limit ordinals, best match first
+    int[] search(String query, int limit) {
+        if (limit <= 0 || docCount == 0) {
+            return new int[0];
+        }
+        
+        List<Postings> lists = new ArrayList<>();
+        List<Double> idfs = new ArrayList<>();
+        for (String term : new LinkedHashSet<>(tokenize(query))) {
+            Postings list = postings.get(term);
+            if (list != null) {
+                lists.add(list);
+                idfs.add(Math.log(1 + (docCount - list.size + 0.5) / (list.size + 0.5)));
+            }
+        }
+        if (lists.isEmpty()) {
+            return new int[0];
+        }
+        
+        // Walk all posting lists in ordinal order, keeping only the best `limit` documents
+        double avgLength = (double) totalLength / docCount;
+        PriorityQueue<ScoredDoc> heap = new PriorityQueue<>(limit + 1);
+        int[] cursors = new int[lists.size()];
+        while (true) {
+            int current = Integer.MAX_VALUE;
+            for (int i = 0; i < lists.size(); i++) {
+                if (cursors[i] < lists.get(i).size) {
+                    current = Math.min(current, lists.get(i).ordinals[cursors[i]]);
+                }
+            }
+            if (current == Integer.MAX_VALUE) {
+                break;
+            }
+            
+            double norm = K1 * (1 - B + B * docLengths[current] / avgLength);
+            double score = 0;
+            for (int i = 0; i < lists.size(); i++) {
+                Postings list = lists.get(i);
+                if (cursors[i] < list.size && list.ordinals[cursors[i]] == current) {
+                    int tf = list.freqs[cursors[i]];
+                    score += idfs.get(i) * tf * (K1 + 1) / (tf + norm);
+                    cursors[i]++;
+                }
+            }
+            
+            if (heap.size() < limit) {
+                heap.add(new ScoredDoc(current, score));
+            } else if (score > heap.peek().score) {
+                heap.poll();
+                heap.add(new ScoredDoc(current, score));
+            }
+        }
+        
+        int[] result = new int[heap.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = heap.poll().ordinal;
+        }
+        return result;
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase();
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static String[] fields(Book book) {
+        return new String[] {book.getTitle(), book.getAuthor(), book.getGenre(), book.getPublisher()};
+    }
+
+    // Ordinals and term frequencies kept in parallel arrays, sorted by ordinal
+    private static class Postings {
+        int[] ordinals = new int[4];
+        int[] freqs = new int[4];
+        int size;
+
+        void add(int ordinal, int freq) {
+            int pos = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (pos >= 0) {
+                freqs[pos] = freq;
+                return;
+            }
+            pos = -pos - 1;
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            System.arraycopy(ordinals, pos, ordinals, pos + 1, size - pos);
+            System.arraycopy(freqs, pos, freqs, pos + 1, size - pos);
+            ordinals[pos] = ordinal;
+            freqs[pos] = freq;
+            size++;
+        }
+
+        boolean remove(int ordinal) {
+            int pos = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(ordinals, pos + 1, ordinals, pos, size - pos - 1);
+            System.arraycopy(freqs, pos + 1, freqs, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+    }
+
+    // Heap entry ordered so the weakest match sits on top; ties prefer the earlier book
+    private static class ScoredDoc implements Comparable<ScoredDoc> {
+        final int ordinal;
+        final double score;
+
+        ScoredDoc(int ordinal, double score) {
+            this.ordinal = ordinal;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(ScoredDoc other) {
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : Integer.compare(other.ordinal, ordinal);
+        }
+    }
+}
\ No newline at end of file
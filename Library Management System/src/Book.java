@@ -1,25 +1,52 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 public class Book implements Serializable {
     private static final long serialVersionUID = 1L;
     
+    // Serialized form from before author, genre and publisher became dictionary codes, so
+    // files written by older versions still load
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("id", String.class),
+        new ObjectStreamField("title", String.class),
+        new ObjectStreamField("author", String.class),
+        new ObjectStreamField("genre", String.class),
+        new ObjectStreamField("isbn", String.class),
+        new ObjectStreamField("publicationYear", int.class),
+        new ObjectStreamField("publisher", String.class),
+        new ObjectStreamField("totalCopies", int.class),
+        new ObjectStreamField("availableCopies", int.class)
+    };
+    
+    // Copy accounting is lock-free: checkouts and returns compare-and-set availableCopies
+    private static final AtomicIntegerFieldUpdater<Book> AVAILABLE_COPIES =
+            AtomicIntegerFieldUpdater.newUpdater(Book.class, "availableCopies");
+    
     private String id;
     private String title;
-    private String author;
-    private String genre;
-    private boolean isAvailable;
+    private int authorCode; // StringDictionary.SHARED codes for the low-cardinality fields
+    private int genreCode;
     private String isbn;
     private int publicationYear;
-    private String publisher;
-    private int totalCopies;
-    private int availableCopies;
+    private int publisherCode;
+    private volatile int totalCopies;
+    private volatile int availableCopies; // isAvailable() is derived from this, never stored
+    private transient int ordinal = -1; // Slot assigned by the owning Library's indexes
+    private transient BookListener listener;
+    private transient Member[] borrowers; // members holding a copy, kept by Member; guarded by this
 
     public Book(String id, String title, String author, String genre) {
         this.id = id;
         this.title = title;
-        this.author = author;
-        this.genre = genre;
-        this.isAvailable = true;
+        this.authorCode = StringDictionary.SHARED.code(author);
+        this.genreCode = StringDictionary.SHARED.code(genre);
         this.totalCopies = 1;
         this.availableCopies = 1;
     }
@@ -27,14 +54,13 @@ public class Book implements Serializable {
     public Book(String id, String title, String author, String genre, String isbn, int publicationYear, String publisher, int totalCopies) {
         this.id = id;
         this.title = title;
-        this.author = author;
-        this.genre = genre;
+        this.authorCode = StringDictionary.SHARED.code(author);
+        this.genreCode = StringDictionary.SHARED.code(genre);
         this.isbn = isbn;
         this.publicationYear = publicationYear;
-        this.publisher = publisher;
+        this.publisherCode = StringDictionary.SHARED.code(publisher);
         this.totalCopies = totalCopies;
         this.availableCopies = totalCopies;
-        this.isAvailable = totalCopies > 0;
     }
 
     // Getters and Setters
@@ -47,27 +73,63 @@ public class Book implements Serializable {
     }
 
     public String getAuthor() {
-        return author;
+        return StringDictionary.SHARED.value(authorCode);
     }
 
     public String getGenre() {
-        return genre;
+        return StringDictionary.SHARED.value(genreCode);
+    }
+    
+    int getAuthorCode() {
+        return authorCode;
+    }
+    
+    int getGenreCode() {
+        return genreCode;
     }
 
     public boolean isAvailable() {
-        return isAvailable;
+        return availableCopies > 0;
     }
 
+    // Takes one copy if any is left; never drops below zero even when callers race
+    public boolean tryAcquireCopy() {
+        while (true) {
+            int copies = availableCopies;
+            if (copies <= 0) {
+                return false;
+            }
+            if (AVAILABLE_COPIES.compareAndSet(this, copies, copies - 1)) {
+                if (copies == 1) {
+                    fireAvailabilityChanged();
+                }
+                return true;
+            }
+        }
+    }
+
+    // Puts one copy back; never exceeds totalCopies even when callers race
+    public boolean releaseCopy() {
+        while (true) {
+            int copies = availableCopies;
+            if (copies >= totalCopies) {
+                return false;
+            }
+            if (AVAILABLE_COPIES.compareAndSet(this, copies, copies + 1)) {
+                if (copies == 0) {
+                    fireAvailabilityChanged();
+                }
+                return true;
+            }
+        }
+    }
+
+    // Kept for existing callers: true releases a copy, false takes one
     public void setAvailable(boolean available) {
-        isAvailable = available;
         if (available) {
-            if (availableCopies < totalCopies) {
-                availableCopies++;
-            }
+            releaseCopy();
         } else {
-            if (availableCopies > 0) {
-                availableCopies--;
-            }
+            tryAcquireCopy();
         }
     }
     
@@ -76,7 +138,12 @@ public class Book implements Serializable {
     }
     
     public void setIsbn(String isbn) {
-        this.isbn = isbn;
+        fireChanging();
+        try {
+            this.isbn = isbn;
+        } finally {
+            fireChanged();
+        }
     }
     
     public int getPublicationYear() {
@@ -84,23 +151,54 @@ public class Book implements Serializable {
     }
     
     public void setPublicationYear(int publicationYear) {
-        this.publicationYear = publicationYear;
+        fireChanging();
+        try {
+            this.publicationYear = publicationYear;
+        } finally {
+            fireChanged();
+        }
     }
     
     public String getPublisher() {
-        return publisher;
+        return StringDictionary.SHARED.value(publisherCode);
+    }
+    
+    int getPublisherCode() {
+        return publisherCode;
     }
     
     public void setPublisher(String publisher) {
-        this.publisher = publisher;
+        fireChanging();
+        try {
+            this.publisherCode = StringDictionary.SHARED.code(publisher);
+        } finally {
+            fireChanged();
+        }
     }
     
     public int getTotalCopies() {
         return totalCopies;
     }
     
+    // Added or withdrawn copies change the shelf count by the same amount, never below zero
     public void setTotalCopies(int totalCopies) {
-        this.totalCopies = totalCopies;
+        fireChanging();
+        try {
+            int delta = totalCopies - this.totalCopies;
+            this.totalCopies = totalCopies;
+            while (true) {
+                int copies = availableCopies;
+                int adjusted = Math.max(0, Math.min(totalCopies, copies + delta));
+                if (AVAILABLE_COPIES.compareAndSet(this, copies, adjusted)) {
+                    if ((copies > 0) != (adjusted > 0)) {
+                        fireAvailabilityChanged();
+                    }
+                    break;
+                }
+            }
+        } finally {
+            fireChanged();
+        }
     }
     
     public int getAvailableCopies() {
@@ -108,8 +206,97 @@ public class Book implements Serializable {
     }
     
     public void setAvailableCopies(int availableCopies) {
-        this.availableCopies = availableCopies;
-        this.isAvailable = availableCopies > 0;
+        int previous = AVAILABLE_COPIES.getAndSet(this, availableCopies);
+        if ((previous > 0) != (availableCopies > 0)) {
+            fireAvailabilityChanged();
+        }
+    }
+
+    int getOrdinal() {
+        return ordinal;
+    }
+    
+    void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
+    
+    void setListener(BookListener listener) {
+        this.listener = listener;
+    }
+    
+    // The other side of Member's loan list, so a book's borrowers are found without
+    // scanning every member; a member holding two copies appears twice
+    synchronized void addBorrower(Member member) {
+        Member[] current = borrowers != null ? borrowers : new Member[0];
+        Member[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = member;
+        borrowers = grown;
+    }
+    
+    synchronized void removeBorrower(Member member) {
+        if (borrowers == null) {
+            return;
+        }
+        for (int i = 0; i < borrowers.length; i++) {
+            if (borrowers[i] == member) {
+                Member[] shrunk = new Member[borrowers.length - 1];
+                System.arraycopy(borrowers, 0, shrunk, 0, i);
+                System.arraycopy(borrowers, i + 1, shrunk, i, shrunk.length - i);
+                borrowers = shrunk.length > 0 ? shrunk : null;
+                return;
+            }
+        }
+    }
+    
+    synchronized List<Member> getBorrowers() {
+        return borrowers != null ? Arrays.asList(borrowers.clone()) : Collections.<Member>emptyList();
+    }
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", id);
+        fields.put("title", title);
+        fields.put("author", getAuthor());
+        fields.put("genre", getGenre());
+        fields.put("isbn", isbn);
+        fields.put("publicationYear", publicationYear);
+        fields.put("publisher", getPublisher());
+        fields.put("totalCopies", totalCopies);
+        fields.put("availableCopies", availableCopies);
+        out.writeFields();
+    }
+    
+    // Strings read from the stream are interned, so loaded books share one copy of each value
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        id = (String) fields.get("id", null);
+        title = (String) fields.get("title", null);
+        authorCode = StringDictionary.SHARED.code((String) fields.get("author", null));
+        genreCode = StringDictionary.SHARED.code((String) fields.get("genre", null));
+        isbn = (String) fields.get("isbn", null);
+        publicationYear = fields.get("publicationYear", 0);
+        publisherCode = StringDictionary.SHARED.code((String) fields.get("publisher", null));
+        totalCopies = fields.get("totalCopies", 0);
+        availableCopies = fields.get("availableCopies", 0);
+        ordinal = -1;
+    }
+    
+    private void fireChanging() {
+        if (listener != null) {
+            listener.bookChanging(this);
+        }
+    }
+    
+    private void fireChanged() {
+        if (listener != null) {
+            listener.bookChanged(this);
+        }
+    }
+    
+    private void fireAvailabilityChanged() {
+        if (listener != null) {
+            listener.availabilityChanged(this);
+        }
     }
 
     @Override
@@ -117,12 +304,12 @@ public class Book implements Serializable {
         return "Book{" +
                 "id='" + id + '\'' +
                 ", title='" + title + '\'' +
-                ", author='" + author + '\'' +
+                ", author='" + getAuthor() + '\'' +
                 ", isbn='" + (isbn != null ? isbn : "N/A") + '\'' +
-                ", publisher='" + (publisher != null ? publisher : "N/A") + '\'' +
+                ", publisher='" + (getPublisher() != null ? getPublisher() : "N/A") + '\'' +
                 ", publicationYear=" + publicationYear +
-                ", genre='" + genre + '\'' +
-                ", isAvailable=" + isAvailable +
+                ", genre='" + getGenre() + '\'' +
+                ", isAvailable=" + isAvailable() +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,9 @@
+// Notified by a Book around changes to fields that the Library indexes
+interface BookListener {
+    void bookChanging(Book book);
+
+    void bookChanged(Book book);
+
+    // Called when isAvailable() flips, e.g. the last copy is checked out
+    void availabilityChanged(Book book);
+}
\ No newline at end of file
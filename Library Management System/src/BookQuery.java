@@ -0,0 +1,45 @@
+// Structured catalog filter; unset criteria match every book.
+// Example: new BookQuery().genre("Fantasy").publisher("Houghton Mifflin").publishedBetween(1930, 1960)
+public class BookQuery {
+    private String genre;
+    private String publisher;
+    private int fromYear = Integer.MIN_VALUE;
+    private int toYear = Integer.MAX_VALUE;
+
+    public BookQuery genre(String genre) {
+        this.genre = genre;
+        return this;
+    }
+
+    public BookQuery publisher(String publisher) {
+        this.publisher = publisher;
+        return this;
+    }
+
+    // Both bounds are inclusive
+    public BookQuery publishedBetween(int fromYear, int toYear) {
+        this.fromYear = fromYear;
+        this.toYear = toYear;
+        return this;
+    }
+
+    public String getGenre() {
+        return genre;
+    }
+
+    public String getPublisher() {
+        return publisher;
+    }
+
+    public int getFromYear() {
+        return fromYear;
+    }
+
+    public int getToYear() {
+        return toYear;
+    }
+
+    boolean hasYearRange() {
+        return fromYear != Integer.MIN_VALUE || toYear != Integer.MAX_VALUE;
+    }
+}
\ No newline at end of file
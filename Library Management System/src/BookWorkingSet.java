@@ -0,0 +1,66 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+// The books of a MappedBookStore that are currently on the heap, at most capacity of them,
+// least recently used evicted first. A book out on loan is pinned, since its borrowers
+// hold that instance, and so is any book whose stripe another thread holds: the stripe is
+// what circulation and edits hold while they use a book, so an instance is never dropped
+// while it is being worked on.
+class BookWorkingSet {
+    private final int capacity;
+    private final LockStripes locks;
+    private final LinkedHashMap<String, Book> books = new LinkedHashMap<>(16, 0.75f, true);
+
+    BookWorkingSet(int capacity, LockStripes locks) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.locks = locks;
+    }
+
+    synchronized Book get(String id) {
+        return books.get(id);
+    }
+
+    // Returns the book already loaded under the same ID, if any, instead of adding this one
+    synchronized Book putIfAbsent(Book book) {
+        Book existing = books.get(book.getId());
+        if (existing != null) {
+            return existing;
+        }
+        books.put(book.getId(), book);
+        return book;
+    }
+
+    synchronized boolean remove(String id) {
+        return books.remove(id) != null;
+    }
+
+    synchronized int size() {
+        return books.size();
+    }
+
+    // Evicts unpinned books, oldest use first, until the set is back within capacity or
+    // only pinned books are left. Stripes the calling thread holds are skipped as well,
+    // since it may be using a book under them.
+    synchronized void trim() {
+        Iterator<Map.Entry<String, Book>> entries = books.entrySet().iterator();
+        while (books.size() > capacity && entries.hasNext()) {
+            Book book = entries.next().getValue();
+            ReentrantLock stripe = locks.lockFor(book.getId());
+            if (stripe.isHeldByCurrentThread() || !stripe.tryLock()) {
+                continue;
+            }
+            try {
+                if (book.getBorrowers().isEmpty()) {
+                    entries.remove();
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,36 @@
+// Case-insensitive exact-match index from a low-cardinality field (genre, publisher) to book
+// ordinals, keyed by the StringDictionary code of the folded value so lookups compare ints
+class BucketIndex {
+    private static final PostingList EMPTY = new PostingList();
+
+    private final IntObjectMap<PostingList> buckets;
+
+    BucketIndex() {
+        this.buckets = new IntObjectMap<>();
+    }
+
+    // code is the field's StringDictionary code, as held by Book
+    void add(int ordinal, int code) {
+        if (code != 0) {
+            buckets.computeIfAbsent(StringDictionary.SHARED.folded(code), k -> new PostingList()).add(ordinal);
+        }
+    }
+
+    void remove(int ordinal, int code) {
+        if (code == 0) {
+            return;
+        }
+        int key = StringDictionary.SHARED.folded(code);
+        PostingList list = buckets.get(key);
+        if (list != null && list.remove(ordinal) && list.isEmpty()) {
+            buckets.remove(key);
+        }
+    }
+
+    PostingList get(String value) {
+        // A value no book has ever used has no code, and so no bucket
+        int key = StringDictionary.SHARED.find(StringDictionary.fold(value));
+        PostingList list = key > 0 ? buckets.get(key) : null;
+        return list != null ? list : EMPTY;
+    }
+}
\ No newline at end of file
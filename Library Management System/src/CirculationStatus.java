@@ -0,0 +1,8 @@
+// Outcome of a single checkout or return
+public enum CirculationStatus {
+    SUCCESS,
+    NOT_FOUND,      // unknown member or book ID
+    UNAVAILABLE,    // no copy left to check out
+    NOT_BORROWED,   // the member does not hold this book
+    LOG_FAILED      // the write-ahead log has failed, so nothing was changed
+}
\ No newline at end of file
@@ -0,0 +1,31 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Makes a rename or newly created file in a directory durable. fsyncing a file covers its
+// contents, not the directory entry pointing at it, so after a crash an atomic move or a
+// new file can vanish unless the directory itself is forced as well.
+final class DirectorySync {
+    private DirectorySync() {
+    }
+
+    // Forces the directory holding file. Platforms that cannot open a directory (Windows)
+    // make entries durable on their own, so failing to open it is ignored; failing to
+    // force one that did open is not.
+    static void forceParent(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory == null) {
+            return;
+        }
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (FileChannel open = channel) {
+            open.force(true);
+        }
+    }
+}
\ No newline at end of file
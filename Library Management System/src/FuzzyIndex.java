@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Typo-tolerant index over title and author tokens. Distinct tokens are kept in a trie that is
+// walked like a Levenshtein automaton: each node extends one row of the edit-distance table, and
+// a branch is abandoned as soon as every cell in its row exceeds the allowed distance.
+class FuzzyIndex {
+    private final Map<String, PostingList> postings; // Concurrent, so optimistic queries can walk it while a writer updates it
+    private final Node root;
+
+    FuzzyIndex() {
+        this.postings = new ConcurrentHashMap<>();
+        this.root = new Node();
+    }
+
+    void add(int ordinal, Book book) {
+        for (String token : tokens(book)) {
+            PostingList list = postings.get(token);
+            if (list == null) {
+                list = new PostingList();
+                postings.put(token, list);
+                insert(token);
+            }
+            list.add(ordinal);
+        }
+    }
+
+    void remove(int ordinal, Book book) {
+        for (String token : tokens(book)) {
+            PostingList list = postings.get(token);
+            if (list != null && list.remove(ordinal) && list.isEmpty()) {
+                postings.remove(token);
+                unmark(token);
+            }
+        }
+    }
+
+    // Ordinals ranked by how many query words matched, then by total edit distance
+    int[] search(String query, int maxDistance, int limit) {
+        IntObjectMap<int[]> scores = new IntObjectMap<>(); // ordinal -> {matched words, distance sum}
+        for (String word : new LinkedHashSet<>(Bm25Index.tokenize(query))) {
+            IntIntMap best = new IntIntMap();
+            List<String> matches = new ArrayList<>();
+            List<Integer> distances = new ArrayList<>();
+            find(word, maxDistance, matches, distances);
+            
+            for (int i = 0; i < matches.size(); i++) {
+                PostingList list = postings.get(matches.get(i));
+                int distance = distances.get(i);
+                for (int j = 0; j < list.size(); j++) {
+                    best.putMin(list.get(j), distance);
+                }
+            }
+            for (int ordinal : best.keys()) {
+                int[] score = scores.computeIfAbsent(ordinal, k -> new int[2]);
+                score[0]++;
+                score[1] += best.get(ordinal, 0);
+            }
+        }
+        
+        // Pack (fewest misses, distance, ordinal) into one long so a primitive sort ranks them
+        int[] ordinals = scores.keys();
+        long[] ranked = new long[ordinals.length];
+        for (int i = 0; i < ordinals.length; i++) {
+            int[] score = scores.get(ordinals[i]);
+            long misses = 0x7FFF - Math.min(score[0], 0x7FFF);
+            long distance = Math.min(score[1], 0xFFFF);
+            ranked[i] = misses << 47 | distance << 31 | ordinals[i];
+        }
+        Arrays.sort(ranked);
+        
+        int[] result = new int[Math.max(0, Math.min(limit, ranked.length))];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (int) (ranked[i] & Integer.MAX_VALUE);
+        }
+        return result;
+    }
+
+    private void insert(String token) {
+        Node node = root;
+        for (int i = 0; i < token.length(); i++) {
+            node = node.childOrCreate(token.charAt(i));
+        }
+        node.word = token;
+    }
+
+    // Removed tokens keep their trie path; only the terminal marker is cleared
+    private void unmark(String token) {
+        Node node = root;
+        for (int i = 0; i < token.length() && node != null; i++) {
+            node = node.child(token.charAt(i));
+        }
+        if (node != null) {
+            node.word = null;
+        }
+    }
+
+    private void find(String word, int maxDistance, List<String> matches, List<Integer> distances) {
+        int[] firstRow = new int[word.length() + 1];
+        for (int j = 0; j < firstRow.length; j++) {
+            firstRow[j] = j;
+        }
+        for (int i = 0; i < root.size; i++) {
+            find(root.children[i], root.keys[i], word, firstRow, maxDistance, matches, distances);
+        }
+    }
+
+    private void find(Node node, char c, String word, int[] previousRow, int maxDistance,
+            List<String> matches, List<Integer> distances) {
+        int[] row = new int[previousRow.length];
+        row[0] = previousRow[0] + 1;
+        int rowMin = row[0];
+        for (int j = 1; j < row.length; j++) {
+            int cost = word.charAt(j - 1) == c ? 0 : 1;
+            row[j] = Math.min(Math.min(row[j - 1] + 1, previousRow[j] + 1), previousRow[j - 1] + cost);
+            rowMin = Math.min(rowMin, row[j]);
+        }
+        
+        if (node.word != null && row[row.length - 1] <= maxDistance) {
+            matches.add(node.word);
+            distances.add(row[row.length - 1]);
+        }
+        if (rowMin <= maxDistance) {
+            for (int i = 0; i < node.size; i++) {
+                find(node.children[i], node.keys[i], word, row, maxDistance, matches, distances);
+            }
+        }
+    }
+
+    private static List<String> tokens(Book book) {
+        List<String> tokens = Bm25Index.tokenize(book.getTitle());
+        tokens.addAll(Bm25Index.tokenize(book.getAuthor()));
+        return new ArrayList<>(new LinkedHashSet<>(tokens));
+    }
+
+    // Trie node with children in parallel arrays sorted by character
+    private static class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        int size;
+        String word; // Set when a live token ends here
+
+        Node child(char c) {
+            int pos = Arrays.binarySearch(keys, 0, size, c);
+            return pos >= 0 ? children[pos] : null;
+        }
+
+        Node childOrCreate(char c) {
+            int pos = Arrays.binarySearch(keys, 0, size, c);
+            if (pos >= 0) {
+                return children[pos];
+            }
+            pos = -pos - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(2, size * 2));
+                children = Arrays.copyOf(children, Math.max(2, size * 2));
+            }
+            System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+            System.arraycopy(children, pos, children, pos + 1, size - pos);
+            keys[pos] = c;
+            children[pos] = new Node();
+            size++;
+            return children[pos];
+        }
+    }
+}
\ No newline at end of file
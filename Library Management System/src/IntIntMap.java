@@ -0,0 +1,158 @@
+import java.util.Arrays;
+
+// Open-addressing map from non-negative int keys (book ordinals) to int values, with no
+// boxing. Linear probing; removal shifts later entries back instead of leaving tombstones.
+// Not thread-safe.
+class IntIntMap {
+    private static final int FREE = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    IntIntMap() {
+        this(16);
+    }
+
+    IntIntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 4) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(int key, int missing) {
+        int slot = find(key);
+        return slot >= 0 ? values[slot] : missing;
+    }
+
+    void put(int key, int value) {
+        checkKey(key);
+        int slot = slotFor(key);
+        if (keys[slot] == FREE) {
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+        growIfFull();
+    }
+
+    // Adds delta to the value for key (0 if absent) and returns the sum
+    int increment(int key, int delta) {
+        checkKey(key);
+        int slot = slotFor(key);
+        if (keys[slot] == FREE) {
+            keys[slot] = key;
+            values[slot] = delta;
+            size++;
+            growIfFull();
+            return delta;
+        }
+        return values[slot] += delta;
+    }
+
+    // Keeps the smaller of the current value and value
+    void putMin(int key, int value) {
+        int slot = find(key);
+        if (slot < 0) {
+            put(key, value);
+        } else if (value < values[slot]) {
+            values[slot] = value;
+        }
+    }
+
+    // Removes key and returns its value, or 0 if it was absent
+    int remove(int key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return 0;
+        }
+        int removed = values[slot];
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+            // Move an entry back into the hole unless its home slot lies between the two
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = FREE;
+        size--;
+        return removed;
+    }
+
+    // Keys in table order
+    int[] keys() {
+        int[] result = new int[size];
+        int count = 0;
+        for (int key : keys) {
+            if (key != FREE) {
+                result[count++] = key;
+            }
+        }
+        return result;
+    }
+
+    IntIntMap copy() {
+        IntIntMap copy = new IntIntMap(4);
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    private int find(int key) {
+        if (key < 0) {
+            return -1;
+        }
+        int slot = slotFor(key);
+        return keys[slot] == key ? slot : -1;
+    }
+
+    // The slot holding key, or the free slot where it would go
+    private int slotFor(int key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growIfFull() {
+        if (size * 2 <= keys.length) {
+            return;
+        }
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, FREE);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slotFor(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static void checkKey(int key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key " + key);
+        }
+    }
+
+    // Ordinals are sequential, so spread them before masking
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
\ No newline at end of file
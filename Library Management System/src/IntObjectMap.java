@@ -0,0 +1,128 @@
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+// Open-addressing map from non-negative int keys (ordinals, dictionary codes) to objects,
+// with no boxing of keys. Same probing and removal scheme as IntIntMap. Not thread-safe,
+// but a reader racing a writer cannot loop: lookups probe one table read once, and a grown
+// table is filled before it replaces the old one, so every probe ends at a free slot.
+class IntObjectMap<V> {
+    private static final int FREE = -1;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    IntObjectMap() {
+        keys = new int[16];
+        values = new Object[16];
+        Arrays.fill(keys, FREE);
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int slot = find(key);
+        return slot >= 0 ? (V) values[slot] : null;
+    }
+
+    void put(int key, V value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key " + key);
+        }
+        int slot = slotFor(key);
+        if (keys[slot] == FREE) {
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+        growIfFull();
+    }
+
+    V computeIfAbsent(int key, IntFunction<V> create) {
+        V value = get(key);
+        if (value == null) {
+            value = create.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    // Removes key and returns its value, or null if it was absent
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        V removed = (V) values[slot];
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+            int home = IntIntMap.hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = FREE;
+        values[hole] = null;
+        size--;
+        return removed;
+    }
+
+    // Keys in table order
+    int[] keys() {
+        int[] result = new int[size];
+        int count = 0;
+        for (int key : keys) {
+            if (key != FREE) {
+                result[count++] = key;
+            }
+        }
+        return result;
+    }
+
+    private int find(int key) {
+        if (key < 0) {
+            return -1;
+        }
+        int[] table = keys;
+        int slot = slotFor(table, key);
+        return table[slot] == key ? slot : -1;
+    }
+
+    private int slotFor(int key) {
+        return slotFor(keys, key);
+    }
+
+    private static int slotFor(int[] table, int key) {
+        int mask = table.length - 1;
+        int slot = IntIntMap.hash(key) & mask;
+        while (table[slot] != FREE && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growIfFull() {
+        if (size * 2 <= keys.length) {
+            return;
+        }
+        int[] grownKeys = new int[keys.length * 2];
+        Object[] grownValues = new Object[keys.length * 2];
+        Arrays.fill(grownKeys, FREE);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                int slot = slotFor(grownKeys, keys[i]);
+                grownKeys[slot] = keys[i];
+                grownValues[slot] = values[i];
+            }
+        }
+        values = grownValues;
+        keys = grownKeys;
+    }
+}
\ No newline at end of file
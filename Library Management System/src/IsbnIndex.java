@@ -0,0 +1,249 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Index of normalized ISBN-13 keys to book ordinals. Exact lookups go through a hash map;
+// prefix lookups (registration group, publisher) walk a path-compressed digit trie.
+class IsbnIndex {
+    private final Map<String, PostingList> exact; // Concurrent, so optimistic queries can walk it while a writer updates it
+    private final Node root;
+
+    IsbnIndex() {
+        this.exact = new ConcurrentHashMap<>();
+        this.root = new Node("");
+    }
+
+    void add(int ordinal, String isbn) {
+        String key = normalize(isbn);
+        if (key == null) {
+            return;
+        }
+        PostingList list = exact.get(key);
+        if (list == null) {
+            list = new PostingList();
+            exact.put(key, list);
+            insert(key, list);
+        }
+        list.add(ordinal);
+    }
+
+    void remove(int ordinal, String isbn) {
+        String key = normalize(isbn);
+        if (key == null) {
+            return;
+        }
+        PostingList list = exact.get(key);
+        if (list != null && list.remove(ordinal) && list.isEmpty()) {
+            exact.remove(key);
+            prune(root, key);
+        }
+    }
+
+    // Ordinals of books with exactly this ISBN, in any accepted ISBN-10/13 spelling
+    int[] get(String isbn) {
+        String key = normalize(isbn);
+        PostingList list = key != null ? exact.get(key) : null;
+        return list != null ? list.toArray() : new int[0];
+    }
+
+    // Up to limit ordinals whose ISBN starts with the prefix, in ISBN order
+    int[] getByPrefix(String prefix, int limit) {
+        String key = normalizePrefix(prefix);
+        List<Integer> result = new ArrayList<>();
+        if (key == null || limit <= 0) {
+            return new int[0];
+        }
+        
+        Node node = root;
+        String rest = key;
+        while (!rest.isEmpty()) {
+            Node child = node.child(rest.charAt(0));
+            if (child == null) {
+                return new int[0];
+            }
+            if (rest.startsWith(child.label)) {
+                rest = rest.substring(child.label.length());
+            } else if (child.label.startsWith(rest)) {
+                rest = "";
+            } else {
+                return new int[0];
+            }
+            node = child;
+        }
+        
+        collect(node, result, limit);
+        int[] ordinals = new int[result.size()];
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] = result.get(i);
+        }
+        return ordinals;
+    }
+
+    // Strips hyphens and spaces and converts ISBN-10 to ISBN-13; null if not a plausible ISBN
+    static String normalize(String isbn) {
+        if (isbn == null) {
+            return null;
+        }
+        String digits = strip(isbn);
+        if (digits.length() == 13 && isDigits(digits, 13)) {
+            return digits;
+        }
+        if (digits.length() == 10 && isDigits(digits, 9)
+                && (isDigit(digits.charAt(9)) || digits.charAt(9) == 'X')) {
+            return toIsbn13(digits.substring(0, 9));
+        }
+        return null;
+    }
+
+    // Prefixes that are not already in the 978/979 space are treated as ISBN-10 prefixes
+    static String normalizePrefix(String prefix) {
+        if (prefix == null) {
+            return null;
+        }
+        String digits = strip(prefix);
+        if (digits.length() == 10 || digits.length() == 13) {
+            String full = normalize(digits);
+            if (full != null) {
+                return full;
+            }
+        }
+        if (!isDigits(digits, digits.length())) {
+            return null;
+        }
+        if ("978".startsWith(digits) || "979".startsWith(digits)
+                || digits.startsWith("978") || digits.startsWith("979")) {
+            return digits;
+        }
+        return "978" + digits;
+    }
+
+    private static String toIsbn13(String nineDigits) {
+        String body = "978" + nineDigits;
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = body.charAt(i) - '0';
+            sum += (i % 2 == 0) ? digit : digit * 3;
+        }
+        return body + ((10 - sum % 10) % 10);
+    }
+
+    private static String strip(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '-' && c != ' ') {
+                sb.append(Character.toUpperCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isDigits(String value, int count) {
+        for (int i = 0; i < count; i++) {
+            if (!isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private void insert(String key, PostingList list) {
+        Node node = root;
+        String rest = key;
+        while (true) {
+            if (rest.isEmpty()) {
+                node.ordinals = list;
+                return;
+            }
+            Node child = node.child(rest.charAt(0));
+            if (child == null) {
+                Node leaf = new Node(rest);
+                leaf.ordinals = list;
+                node.setChild(leaf);
+                return;
+            }
+            
+            int common = 0;
+            int max = Math.min(child.label.length(), rest.length());
+            while (common < max && child.label.charAt(common) == rest.charAt(common)) {
+                common++;
+            }
+            if (common < child.label.length()) {
+                // Split the edge so the shared part becomes its own node
+                Node middle = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                middle.setChild(child);
+                node.setChild(middle);
+                child = middle;
+            }
+            node = child;
+            rest = rest.substring(common);
+        }
+    }
+
+    // Removes empty leaves along the key's path; returns true if node itself is now empty
+    private boolean prune(Node node, String rest) {
+        if (rest.isEmpty()) {
+            node.ordinals = null;
+        } else {
+            Node child = node.child(rest.charAt(0));
+            if (child != null && rest.startsWith(child.label)
+                    && prune(child, rest.substring(child.label.length()))) {
+                node.children[rest.charAt(0) - '0'] = null;
+            }
+        }
+        if (node.ordinals != null || node.children == null) {
+            return node.ordinals == null;
+        }
+        for (Node child : node.children) {
+            if (child != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void collect(Node node, List<Integer> result, int limit) {
+        if (node.ordinals != null) {
+            for (int i = 0; i < node.ordinals.size() && result.size() < limit; i++) {
+                result.add(node.ordinals.get(i));
+            }
+        }
+        if (node.children != null) {
+            for (Node child : node.children) {
+                if (result.size() >= limit) {
+                    return;
+                }
+                if (child != null) {
+                    collect(child, result, limit);
+                }
+            }
+        }
+    }
+
+    private static class Node {
+        String label;
+        Node[] children; // Indexed by digit, allocated on first child
+        PostingList ordinals;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        Node child(char digit) {
+            return children != null ? children[digit - '0'] : null;
+        }
+
+        void setChild(Node child) {
+            if (children == null) {
+                children = new Node[10];
+            }
+            children[child.label.charAt(0) - '0'] = child;
+        }
+    }
+}
\ No newline at end of file
@@ -1,168 +1,1642 @@
 import java.util.ArrayList;
-import java.util.List;
 import java.util.HashMap;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.io.Serializable;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.UncheckedIOException;
 import java.io.File;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
 
 public class Library implements Serializable {
     private static final long serialVersionUID = 1L;
+    private static final int STREAM_PAGE_SIZE = 256;
+    private static final int STORED_BOOKS_LOADED = 10000; // working set of an attached book store
     
     private List<Book> books;
     private List<Member> members;
-    private List<Transaction> transactions;
-    private Map<String, Integer> bookStats; // For tracking popular books
+    private List<Transaction> transactions; // history embedded as objects, only read from older files
+    private Map<String, Integer> bookStats; // For tracking popular books; at runtime only books not in the catalog
+    private long appliedLsn; // last write-ahead log record reflected in this snapshot
+    private Map<String, List<String>> openLoans; // member ID -> borrowed book IDs, only read from older files
+    
+    // Concurrency: ID lookups are lock-free. Catalog structure and the search indexes are
+    // guarded by catalogLock; queries run optimistically and only take the read lock if a
+    // write slipped in while they ran. Book copies are claimed with CAS
+    // in Book, under the member's stripe (for the borrow list) and then the book's stripe,
+    // which removing or loading a book also holds so circulation never touches a book
+    // mid-removal. Lock order: member stripe, book stripe, catalog write lock.
+    private transient StampedLock catalogLock;
+    private transient long fieldUpdateStamp; // write stamp held between bookChanging and bookChanged
+    private transient LockStripes memberLocks;
+    private transient LockStripes bookLocks;
+    
+    // Primary key indexes, rebuilt from the lists after deserialization
+    private transient Map<String, Book> booksById;
+    private transient Map<String, Member> membersById;
+    
+    // Substring search indexes keyed by book ordinal (position in bookSlots)
+    private transient List<Book> bookSlots;
+    private transient TrigramIndex titleIndex;
+    private transient TrigramIndex authorIndex;
+    private transient Bm25Index searchIndex;
+    private transient AvailabilityIndex availability;
+    private transient BucketIndex genreIndex;
+    private transient BucketIndex publisherIndex;
+    private transient RangeIndex yearIndex;
+    private transient IsbnIndex isbnIndex;
+    private transient FuzzyIndex fuzzyIndex;
+    private transient AutocompleteIndex bookSuggestions;
+    private transient AutocompleteIndex memberSuggestions;
+    private transient BookListener indexUpdater;
+    private transient LibraryListener listener;
+    private transient volatile WriteAheadLog wal;
+    private transient volatile Snapshotter snapshotter;
+    private transient volatile MappedBookStore catalogStore; // books found by ID only, see attachCatalogStore
+    private transient volatile BookWorkingSet storedBooks; // the store's books currently on the heap
+    private transient BookListener storeUpdater;
+    private transient AtomicLong changeCount; // changes so far, drives snapshot triggers
+    private transient AtomicLong savedChanges; // changeCount covered by the last save
+    private transient TransactionHistory history;
+    private transient IntIntMap checkoutCounts; // book ordinal -> checkouts; guards itself and bookStats
 
     public Library() {
         this.books = new ArrayList<>();
         this.members = new ArrayList<>();
-        this.transactions = new ArrayList<>();
         this.bookStats = new HashMap<>();
+        initLocks();
+        rebuildIndexes();
+        this.history = newHistory(new ArrayList<>(), new ArrayList<>());
+    }
+    
+    // Rebuilds a library read from the compact file format
+    private Library(LibraryCodec.Contents contents) {
+        this.books = contents.books;
+        this.members = contents.members;
+        this.bookStats = new HashMap<>(contents.bookStats);
+        this.appliedLsn = contents.appliedLsn;
+        initLocks();
+        rebuildIndexes();
+        this.history = newHistory(contents.segments, new ArrayList<>(contents.transactions));
+    }
+    
+    private TransactionHistory newHistory(List<TransactionHistory.Segment> segments, List<Transaction> recent) {
+        return new TransactionHistory(segments, recent, this::loadedBook, id -> membersById.get(id));
+    }
+    
+    // Libraries are saved in the compact format (saveToFile, snapshots). Serialization is
+    // kept only to read files from older versions, so writing is refused rather than
+    // producing a file without the history and loans.
+    private void writeObject(ObjectOutputStream oos) throws IOException {
+        throw new NotSerializableException("Library is saved with saveToFile, not Java serialization");
+    }
+    
+    // Reads a file saved by an older version and restores the transient indexes
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        bookStats = new HashMap<>(bookStats);
+        initLocks();
+        rebuildIndexes();
+        history = newHistory(new ArrayList<>(), new ArrayList<>());
+        history.appendStored(transactions != null ? transactions : new ArrayList<>());
+        transactions = null;
+        if (openLoans != null) {
+            for (Map.Entry<String, List<String>> loans : openLoans.entrySet()) {
+                Member member = membersById.get(loans.getKey());
+                if (member == null) {
+                    continue;
+                }
+                for (String bookId : loans.getValue()) {
+                    Book book = booksById.get(bookId);
+                    if (book != null) {
+                        member.restoreLoan(book);
+                    }
+                }
+            }
+            openLoans = null;
+        } else {
+            restoreLoansFromHistory();
+        }
+    }
+    
+    // Files from before loans were saved only have the history, so replay it once, oldest
+    // first: a checkout opens a loan and a return closes the member's loan of that book
+    private void restoreLoansFromHistory() {
+        Map<Member, List<Book>> open = new IdentityHashMap<>();
+        for (Transaction transaction : history.view()) {
+            Member member = transaction.getMember();
+            Book book = transaction.getBook();
+            if (membersById.get(member.getId()) != member || booksById.get(book.getId()) != book) {
+                continue;
+            }
+            List<Book> loans = open.computeIfAbsent(member, m -> new ArrayList<>());
+            if (transaction.getType() == Transaction.Type.CHECKOUT) {
+                loans.add(book);
+            } else {
+                loans.remove(book);
+            }
+        }
+        for (Map.Entry<Member, List<Book>> loans : open.entrySet()) {
+            for (Book book : loans.getValue()) {
+                loans.getKey().restoreLoan(book);
+            }
+        }
     }
     
-    // Save library data to file
-    public void saveToFile(String filename) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filename))) {
-            oos.writeObject(this);
-            System.out.println("Library data saved successfully to " + filename);
+    private void initLocks() {
+        catalogLock = new StampedLock();
+        memberLocks = LockStripes.forCores();
+        bookLocks = LockStripes.forCores();
+        changeCount = new AtomicLong();
+        savedChanges = new AtomicLong();
+    }
+    
+    // Pauses every writer: all member stripes (circulation) and the catalog write lock.
+    // Only used to capture snapshots, and held just long enough to copy references.
+    private long lockWriters() {
+        for (int i = 0; i < memberLocks.size(); i++) {
+            memberLocks.get(i).lock();
+        }
+        return catalogLock.writeLock();
+    }
+    
+    private void unlockWriters(long stamp) {
+        catalogLock.unlockWrite(stamp);
+        for (int i = memberLocks.size() - 1; i >= 0; i--) {
+            memberLocks.get(i).unlock();
+        }
+    }
+    
+    // Runs a query against the catalog and its indexes without blocking writers. The first
+    // attempt takes no lock; if a write overlapped it, the result (or any exception thrown
+    // while reading a half-updated index) is discarded and the query reruns under the read
+    // lock. The indexes only use structures that a pass racing a writer can walk without
+    // looping or allocating beyond their real size: concurrent maps, and arrays that are
+    // filled before they are published.
+    private <T> T read(Supplier<T> query) {
+        long stamp = catalogLock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = query.get();
+                if (catalogLock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (catalogLock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = catalogLock.readLock();
+        try {
+            return query.get();
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
+    }
+    
+    // The lock is not reentrant: updates must not call read() or write() again
+    private <T> T write(Supplier<T> update) {
+        long stamp = catalogLock.writeLock();
+        try {
+            return update.get();
+        } finally {
+            catalogLock.unlockWrite(stamp);
+        }
+    }
+    
+    private void rebuildIndexes() {
+        booksById = new ConcurrentHashMap<>();
+        bookSlots = new ArrayList<>();
+        checkoutCounts = new IntIntMap(bookStats.size());
+        titleIndex = new TrigramIndex();
+        authorIndex = new TrigramIndex();
+        searchIndex = new Bm25Index();
+        availability = new AvailabilityIndex();
+        genreIndex = new BucketIndex();
+        publisherIndex = new BucketIndex();
+        yearIndex = new RangeIndex();
+        isbnIndex = new IsbnIndex();
+        fuzzyIndex = new FuzzyIndex();
+        bookSuggestions = new AutocompleteIndex();
+        memberSuggestions = new AutocompleteIndex();
+        indexUpdater = new BookListener() {
+            // The write lock is held across the field update so readers never see it half-indexed
+            @Override
+            public void bookChanging(Book book) {
+                refuseIfLogFailed(book);
+                long stamp = catalogLock.writeLock();
+                try {
+                    removeFieldIndexes(book);
+                } catch (RuntimeException | Error e) {
+                    // The setter does not go on to call bookChanged
+                    catalogLock.unlockWrite(stamp);
+                    throw e;
+                }
+                fieldUpdateStamp = stamp;
+            }
+            
+            @Override
+            public void bookChanged(Book book) {
+                long lsn;
+                try {
+                    addFieldIndexes(book);
+                    lsn = log(log -> log.logUpdateBook(book));
+                } finally {
+                    catalogLock.unlockWrite(fieldUpdateStamp);
+                }
+                awaitDurable(lsn);
+            }
+            
+            @Override
+            public void availabilityChanged(Book book) {
+                availability.refresh(book);
+            }
+        };
+        for (Book book : books) {
+            if (booksById.putIfAbsent(book.getId(), book) == null) {
+                indexBook(book);
+            }
+        }
+        
+        membersById = new ConcurrentHashMap<>();
+        for (Member member : members) {
+            if (membersById.putIfAbsent(member.getId(), member) == null) {
+                memberSuggestions.add(member.getName());
+            }
+        }
+    }
+    
+    // Book setters have no result to refuse an edit with, so it fails before the field changes
+    private void refuseIfLogFailed(Book book) {
+        IOException failure = logFailure();
+        if (failure != null) {
+            throw new UncheckedIOException("Write-ahead log failed; " + book.getId() + " was not changed", failure);
+        }
+    }
+    
+    // Pass null to stop receiving events
+    public void setListener(LibraryListener listener) {
+        this.listener = listener;
+    }
+    
+    // Save library data to file; returns false if it could not be written. Writers are
+    // paused only while references are copied, so the file is a consistent point in time.
+    // With a write-ahead log attached this is also a checkpoint and the log records it
+    // covers are dropped afterwards, unless background snapshots (which own log cleanup)
+    // are running.
+    public boolean saveToFile(String filename) {
+        WriteAheadLog log = wal;
+        boolean compactLog = log != null && snapshotter == null;
+        Capture capture;
+        long stamp = lockWriters();
+        try {
+            capture = capture(log != null ? log.getLastLsn() : appliedLsn);
+            if (compactLog) {
+                try {
+                    log.rotate();
+                } catch (IOException e) {
+                    compactLog = false;
+                    if (listener != null) {
+                        listener.logFailed(log.getPath().toString(), e);
+                    }
+                }
+            }
+        } finally {
+            unlockWriters(stamp);
+        }
+        
+        // A plain save is self-contained: sealed history is read back and written in full
+        if (!writeSnapshot(filename, image(capture, false))) {
+            return false;
+        }
+        if (snapshotter == null) {
+            // Generations track saved changes themselves when snapshots are running
+            markSaved(capture.changes);
+        }
+        if (compactLog) {
+            try {
+                log.deleteThrough(capture.lsn);
+            } catch (IOException e) {
+                // The snapshot is already safe; replay skips the records it covers
+                if (listener != null) {
+                    listener.logFailed(log.getPath().toString(), e);
+                }
+            }
+        }
+        return true;
+    }
+    
+    // Writes and fsyncs a temporary file first, then renames it over the target, so a crash
+    // mid-save never destroys the previous snapshot. The directory is forced after the
+    // rename, or a crash could bring back the old file after saved() was reported.
+    private boolean writeSnapshot(String filename, LibraryCodec.Contents contents) {
+        Path target = Paths.get(filename);
+        Path temp = Paths.get(filename + ".tmp");
+        try {
+            try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                 OutputStream out = new BufferedOutputStream(file)) {
+                LibraryCodec.encode(contents, out);
+                file.getFD().sync();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            DirectorySync.forceParent(target);
         } catch (IOException e) {
-            System.out.println("Error saving library data: " + e.getMessage());
+            if (listener != null) {
+                listener.saveFailed(filename, e);
+            }
+            return false;
+        }
+        if (listener != null) {
+            listener.saved(filename);
         }
+        return true;
+    }
+    
+    // Reads either format: the compact one, or Java serialization from older versions
+    static Library read(InputStream source) throws IOException, ClassNotFoundException {
+        InputStream in = source.markSupported() ? source : new BufferedInputStream(source);
+        byte[] head = new byte[4];
+        in.mark(head.length);
+        int length = in.readNBytes(head, 0, head.length);
+        in.reset();
+        if (length == head.length && LibraryCodec.isCompact(head)) {
+            return new Library(LibraryCodec.decode(in));
+        }
+        return (Library) new ObjectInputStream(in).readObject();
     }
     
     // Load library data from file
     public static Library loadFromFile(String filename) {
+        return loadFromFile(filename, null);
+    }
+    
+    // Falls back to a new empty library if the file is missing or unreadable. The listener,
+    // if any, is told which case happened and stays attached to the returned library.
+    public static Library loadFromFile(String filename, LibraryListener listener) {
+        Library library;
         File file = new File(filename);
         if (!file.exists()) {
-            System.out.println("No saved library data found. Creating new library.");
-            return new Library();
+            library = new Library();
+            if (listener != null) {
+                listener.noSavedData(filename);
+            }
+        } else {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(filename))) {
+                library = read(in);
+                if (listener != null) {
+                    listener.loaded(filename);
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                library = new Library();
+                if (listener != null) {
+                    listener.loadFailed(filename, e);
+                }
+            }
+        }
+        library.setListener(listener);
+        return library;
+    }
+    
+    // Loads the snapshot, replays the log records written after it, and keeps logging every
+    // catalog and circulation change to logFile from then on. If the log cannot be read or
+    // opened the library still loads, without a log, and the listener is told.
+    public static Library openWithLog(String snapshotFile, String logFile, LibraryListener listener) {
+        return openWithLog(snapshotFile, logFile, null, listener);
+    }
+    
+    // Same, for a library whose catalog lives in a book store; the store is attached before
+    // the log is replayed so logged circulation of stored books finds them
+    public static Library openWithLog(String snapshotFile, String logFile, MappedBookStore catalogStore,
+                                      LibraryListener listener) {
+        // Prefer the newest valid snapshot generation, unless a plain save is more recent
+        Library library = SnapshotStore.loadNewest(Paths.get(snapshotFile), listener);
+        if (library == null || new File(snapshotFile).exists()) {
+            Library saved = loadFromFile(snapshotFile, listener);
+            if (library == null || saved.appliedLsn > library.appliedLsn) {
+                library = saved;
+            }
+        }
+        library.setListener(listener);
+        if (catalogStore != null) {
+            library.attachCatalogStore(catalogStore);
+        }
+        library.history.attach(historyDirectory(snapshotFile));
+        Path logPath = Paths.get(logFile);
+        try {
+            int replayed = WriteAheadLog.replay(logPath, library.appliedLsn, library.logReplayer());
+            if (listener != null && replayed > 0) {
+                listener.replayed(logFile, replayed);
+            }
+            library.wal = WriteAheadLog.open(logPath, library.appliedLsn);
+        } catch (IOException e) {
+            if (listener != null) {
+                listener.logFailed(logFile, e);
+            }
+        }
+        return library;
+    }
+    
+    // Starts writing numbered snapshot generations of this library next to snapshotFile on a
+    // background thread, after every changeThreshold logged changes and/or every
+    // intervalMillis (0 disables either trigger). Only the newest generations are kept,
+    // and log segments older than all of them are deleted.
+    public void startSnapshots(String snapshotFile, int generations, int changeThreshold, long intervalMillis) {
+        if (generations < 1) {
+            throw new IllegalArgumentException("generations must be at least 1");
+        }
+        if (snapshotter != null) {
+            throw new IllegalStateException("Snapshots are already running");
+        }
+        history.attach(historyDirectory(snapshotFile));
+        snapshotter = new Snapshotter(this, new SnapshotStore(Paths.get(snapshotFile), generations),
+                changeThreshold, intervalMillis);
+    }
+    
+    // Sealed transaction history segments live in <snapshotFile>.history/ and are shared by
+    // every generation, which only lists the segments it covers
+    private static Path historyDirectory(String snapshotFile) {
+        return Paths.get(snapshotFile + ".history");
+    }
+    
+    // Takes a snapshot generation now and waits for it to be on disk. Nothing is written if
+    // there are no unsaved changes.
+    public boolean snapshotNow() {
+        Snapshotter current = snapshotter;
+        if (current == null) {
+            throw new IllegalStateException("Snapshots are not running");
+        }
+        return current.snapshotNow();
+    }
+    
+    // Queues a snapshot generation on the snapshot thread and returns at once; the listener
+    // hears how it went. Returns false, queueing nothing, if there are no unsaved changes.
+    public boolean saveInBackground() {
+        Snapshotter current = snapshotter;
+        if (current == null) {
+            throw new IllegalStateException("Snapshots are not running");
+        }
+        if (!hasUnsavedChanges()) {
+            return false;
+        }
+        current.requestSnapshot();
+        return true;
+    }
+    
+    // True if anything changed since the last snapshot generation, or since the last
+    // saveToFile when snapshots are not running. Logged changes are already durable either way.
+    public boolean hasUnsavedChanges() {
+        return changeCount.get() != savedChanges.get();
+    }
+    
+    long getChangeCount() {
+        return changeCount.get();
+    }
+    
+    private void markSaved(long changes) {
+        savedChanges.accumulateAndGet(changes, Math::max);
+    }
+    
+    // Reports a snapshot that failed outside writeGeneration's own error handling
+    void snapshotFailed(SnapshotStore store, Exception error) {
+        if (listener != null) {
+            listener.snapshotFailed(store.getBase().toString(), error);
+        }
+    }
+    
+    // Captures a consistent image under a short writer pause, then encodes and writes it
+    // with circulation running again. Returns the change count the snapshot covers, or -1.
+    long writeGeneration(SnapshotStore store) {
+        try {
+            history.seal();
+        } catch (IOException e) {
+            // Not fatal: the transactions stay resident and go into this generation instead
+            if (listener != null) {
+                listener.saveFailed(historyDirectory(store.getBase().toString()).toString(), e);
+            }
+        }
+        WriteAheadLog log = wal;
+        Capture capture;
+        long stamp = lockWriters();
+        try {
+            capture = capture(log != null ? log.getLastLsn() : 0);
+            if (log != null) {
+                // Later records go to a new segment, so older ones can be deleted as files
+                log.rotate();
+            }
+        } catch (IOException e) {
+            if (listener != null) {
+                listener.logFailed(log.getPath().toString(), e);
+            }
+            return -1;
+        } finally {
+            unlockWriters(stamp);
         }
         
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filename))) {
-            Library library = (Library) ois.readObject();
-            System.out.println("Library data loaded successfully from " + filename);
-            return library;
-        } catch (IOException | ClassNotFoundException e) {
-            System.out.println("Error loading library data: " + e.getMessage());
-            return new Library();
+        String target = store.getBase().toString();
+        try {
+            target = store.write(image(capture, true), capture.lsn).toString();
+            if (log != null) {
+                log.deleteThrough(store.oldestRetainedLsn());
+            }
+        } catch (IOException e) {
+            if (listener != null) {
+                listener.saveFailed(target, e);
+            }
+            return -1;
+        }
+        markSaved(capture.changes);
+        if (listener != null) {
+            listener.saved(target);
+        }
+        return capture.changes;
+    }
+    
+    // References copied while writers are paused; image() turns them into detached copies
+    private static class Capture {
+        Book[] books;
+        int[] availableCopies;
+        Member[] members;
+        Book[][] borrowed;
+        int transactionCount;
+        List<TransactionHistory.Segment> segments;
+        int[] ordinals;
+        IntIntMap checkoutCounts;
+        Map<String, Integer> retiredStats;
+        long lsn;
+        long changes;
+    }
+    
+    // Caller must hold lockWriters(); only copies references and counters
+    private Capture capture(long lsn) {
+        Capture capture = new Capture();
+        capture.lsn = lsn;
+        capture.changes = changeCount.get();
+        capture.books = books.toArray(new Book[0]);
+        capture.availableCopies = new int[capture.books.length];
+        for (int i = 0; i < capture.books.length; i++) {
+            capture.availableCopies[i] = capture.books[i].getAvailableCopies();
+        }
+        capture.members = members.toArray(new Member[0]);
+        capture.borrowed = new Book[capture.members.length][];
+        for (int i = 0; i < capture.members.length; i++) {
+            capture.borrowed[i] = capture.members[i].getBorrowedBooks().toArray(new Book[0]);
+        }
+        capture.segments = history.getSegments();
+        capture.transactionCount = history.size();
+        capture.ordinals = ordinalsOf(capture.books);
+        synchronized (checkoutCounts) {
+            capture.checkoutCounts = checkoutCounts.copy();
+            capture.retiredStats = new HashMap<>(bookStats);
+        }
+        return capture;
+    }
+    
+    private static int[] ordinalsOf(Book[] books) {
+        int[] ordinals = new int[books.length];
+        for (int i = 0; i < books.length; i++) {
+            ordinals[i] = books[i].getOrdinal();
+        }
+        return ordinals;
+    }
+    
+    // Checkout counts keyed by book ID, as the file formats store them
+    private static Map<String, Integer> checkoutStats(Book[] books, int[] ordinals, IntIntMap counts,
+            Map<String, Integer> retired) {
+        Map<String, Integer> stats = new HashMap<>(retired);
+        for (int i = 0; i < books.length; i++) {
+            int count = counts.get(ordinals[i], 0);
+            if (count > 0) {
+                stats.merge(books[i].getId(), count, Integer::sum);
+            }
+        }
+        return stats;
+    }
+    
+    // Builds detached copies of the captured state, safe to encode while circulation runs.
+    // With sealedHistory the image lists the captured history segments instead of their
+    // transactions, which are already on disk.
+    private LibraryCodec.Contents image(Capture capture, boolean sealedHistory) {
+        List<TransactionHistory.Segment> segments = sealedHistory ? capture.segments : new ArrayList<>();
+        int from = 0;
+        for (TransactionHistory.Segment segment : segments) {
+            from += segment.count;
+        }
+        // History positions are stable, so the captured range is the same however much has
+        // been appended or sealed since
+        List<Transaction> entries = history.range(from, capture.transactionCount);
+        
+        Map<Book, Book> bookCopies = new IdentityHashMap<>();
+        List<Book> bookImage = new ArrayList<>(capture.books.length);
+        for (int i = 0; i < capture.books.length; i++) {
+            Book copy = copyOf(capture.books[i], capture.availableCopies[i]);
+            bookCopies.put(capture.books[i], copy);
+            bookImage.add(copy);
+        }
+        Map<Member, Member> memberCopies = new IdentityHashMap<>();
+        List<Member> memberImage = new ArrayList<>(capture.members.length);
+        for (int i = 0; i < capture.members.length; i++) {
+            Member copy = copyOf(capture.members[i]);
+            for (Book book : capture.borrowed[i]) {
+                copy.getBorrowedBooks().add(bookCopies.computeIfAbsent(book,
+                        removed -> copyOf(removed, removed.getAvailableCopies())));
+            }
+            memberCopies.put(capture.members[i], copy);
+            memberImage.add(copy);
+        }
+        List<Transaction> transactionImage = new ArrayList<>(entries.size());
+        for (Transaction transaction : entries) {
+            // Books and members removed since still appear in old transactions
+            Book book = bookCopies.computeIfAbsent(transaction.getBook(),
+                    removed -> copyOf(removed, removed.getAvailableCopies()));
+            Member member = memberCopies.computeIfAbsent(transaction.getMember(), Library::copyOf);
+            transactionImage.add(new Transaction(book, member, transaction.getType(), transaction.getTimestamp()));
+        }
+        Map<String, Integer> stats = checkoutStats(capture.books, capture.ordinals, capture.checkoutCounts,
+                capture.retiredStats);
+        return new LibraryCodec.Contents(bookImage, memberImage, transactionImage, stats, capture.lsn, segments);
+    }
+    
+    private static Book copyOf(Book book, int availableCopies) {
+        Book copy = new Book(book.getId(), book.getTitle(), book.getAuthor(), book.getGenre(), book.getIsbn(),
+                book.getPublicationYear(), book.getPublisher(), book.getTotalCopies());
+        copy.setAvailableCopies(availableCopies);
+        return copy;
+    }
+    
+    private static Member copyOf(Member member) {
+        return new Member(member.getId(), member.getName(), member.getEmail(), member.getPhoneNumber());
+    }
+    
+    // Stops background snapshots and flushes and closes the write-ahead log, if attached
+    public void close() {
+        Snapshotter current = snapshotter;
+        if (current != null) {
+            snapshotter = null;
+            current.shutdown();
+        }
+        WriteAheadLog log = wal;
+        if (log == null) {
+            return;
+        }
+        wal = null;
+        try {
+            log.close();
+        } catch (IOException e) {
+            if (listener != null) {
+                listener.logFailed(log.getPath().toString(), e);
+            }
+        }
+    }
+    
+    // Runs with no log attached, so replayed changes are applied without being logged again
+    private WriteAheadLog.Handler logReplayer() {
+        return new WriteAheadLog.Handler() {
+            @Override
+            public void addBook(Book book) {
+                Library.this.addBook(book);
+            }
+            
+            @Override
+            public void removeBook(String bookId) {
+                Book book = findBookById(bookId);
+                if (book != null) {
+                    Library.this.removeBook(book);
+                }
+            }
+            
+            @Override
+            public void updateBook(String bookId, String isbn, int publicationYear, String publisher,
+                    int totalCopies) {
+                Book book = findBookById(bookId);
+                if (book == null) {
+                    return;
+                }
+                if (!Objects.equals(isbn, book.getIsbn())) {
+                    book.setIsbn(isbn);
+                }
+                if (publicationYear != book.getPublicationYear()) {
+                    book.setPublicationYear(publicationYear);
+                }
+                if (!Objects.equals(publisher, book.getPublisher())) {
+                    book.setPublisher(publisher);
+                }
+                if (totalCopies != book.getTotalCopies()) {
+                    book.setTotalCopies(totalCopies);
+                }
+            }
+            
+            @Override
+            public void addMember(Member member) {
+                Library.this.addMember(member);
+            }
+            
+            @Override
+            public void removeMember(String memberId) {
+                Member member = findMemberById(memberId);
+                if (member != null) {
+                    Library.this.removeMember(member);
+                }
+            }
+            
+            @Override
+            public void circulate(Transaction.Type type, String memberId, String bookId, LocalDateTime timestamp) {
+                if (type == Transaction.Type.CHECKOUT) {
+                    checkoutBook(memberId, bookId, timestamp);
+                } else {
+                    returnBook(memberId, bookId, timestamp);
+                }
+            }
+        };
+    }
+    
+    // Counts a change for save tracking and the snapshot triggers
+    private void changed() {
+        long changes = changeCount.incrementAndGet();
+        Snapshotter current = snapshotter;
+        if (current != null) {
+            current.changed(changes);
+        }
+    }
+    
+    // Appends a record if a log is attached; returns its LSN, or 0 without a log
+    private long log(ToLongFunction<WriteAheadLog> record) {
+        changed();
+        WriteAheadLog log = wal;
+        return log != null ? record.applyAsLong(log) : 0;
+    }
+    
+    // Waits for the group commit covering lsn. Called after releasing locks so other
+    // writers can join the same fsync. If the log fails meanwhile the change stays made in
+    // memory and the listener is told; every change after that is refused (logFailure).
+    private void awaitDurable(long lsn) {
+        WriteAheadLog log = wal;
+        if (log != null && lsn > 0) {
+            try {
+                log.awaitDurable(lsn);
+            } catch (UncheckedIOException e) {
+                if (listener != null) {
+                    listener.logFailed(log.getPath().toString(), e.getCause());
+                }
+            }
+        }
+    }
+    
+    // The error of a failed log, or null. A failed log stays failed, so every change checks
+    // this first and is refused before anything is modified, rather than being applied in
+    // memory with no record of it; the listener hears of each refusal.
+    private IOException logFailure() {
+        WriteAheadLog log = wal;
+        IOException failure = log != null ? log.getFailure() : null;
+        if (failure != null && listener != null) {
+            listener.logFailed(log.getPath().toString(), failure);
+        }
+        return failure;
+    }
+
+    // Serves books kept in a disk-resident store rather than the in-memory catalog, so a
+    // large collection costs heap only for the books in use. Stored books are found by ID
+    // only: findBookById, circulation and getBorrowers reach them, while searches,
+    // listings, counts, statistics and snapshots cover the in-memory catalog alone. At most
+    // maxLoaded stored books stay on the heap, least recently used evicted first; a book
+    // out on loan stays until every copy is back. Once a store is attached, addBook adds
+    // new books to it, and edits and removals of stored books are written to it as they
+    // happen, as well as logged. Loans of stored books are kept by members, snapshots and
+    // the log like any other, so a stored record's available copies are not used.
+    // Attach the same store every time the library is opened, before circulation starts;
+    // the caller keeps ownership of the store and closes it after the library.
+    public void attachCatalogStore(MappedBookStore store, int maxLoaded) {
+        BookWorkingSet loaded = new BookWorkingSet(maxLoaded, bookLocks);
+        storeUpdater = newStoreUpdater();
+        // Loans read from a snapshot hold the stored books they refer to, and those
+        // instances become the loaded copies
+        for (Member member : getMembers()) {
+            for (Book book : member.getBorrowedBooks()) {
+                if (!booksById.containsKey(book.getId()) && store.contains(book.getId())) {
+                    book.setListener(storeUpdater);
+                    loaded.putIfAbsent(book);
+                }
+            }
+        }
+        storedBooks = loaded;
+        catalogStore = store;
+    }
+
+    public void attachCatalogStore(MappedBookStore store) {
+        attachCatalogStore(store, STORED_BOOKS_LOADED);
+    }
+
+    // Writes edits of a stored book through to the store and the log, under the book's
+    // stripe. A copy evicted since it was looked up becomes the loaded copy again, unless
+    // the book has been loaded afresh meanwhile.
+    private BookListener newStoreUpdater() {
+        return new BookListener() {
+            @Override
+            public void bookChanging(Book book) {
+                refuseIfLogFailed(book);
+                ReentrantLock stripe = bookLocks.lockFor(book.getId());
+                stripe.lock();
+                if (storedBooks.putIfAbsent(book) != book) {
+                    // The setter does not go on to call bookChanged
+                    stripe.unlock();
+                    throw new IllegalStateException("Book " + book.getId()
+                            + " was reloaded from the store since this copy was looked up");
+                }
+            }
+
+            @Override
+            public void bookChanged(Book book) {
+                long lsn;
+                try {
+                    putStored(book);
+                    lsn = log(log -> log.logUpdateBook(book));
+                } finally {
+                    bookLocks.lockFor(book.getId()).unlock();
+                }
+                storedBooks.trim();
+                awaitDurable(lsn);
+            }
+
+            @Override
+            public void availabilityChanged(Book book) {
+                // Stored books are not in the availability index
+            }
+        };
+    }
+
+    private boolean putStored(Book book) {
+        MappedBookStore store = catalogStore;
+        try {
+            store.put(book);
+            return true;
+        } catch (IOException e) {
+            if (listener != null) {
+                listener.saveFailed(store.getPath().toString(), e);
+            }
+            return false;
         }
     }
 
     // Book Management Methods
-    public void addBook(Book book) {
-        books.add(book);
+    // Returns false if a book with the same ID is already in the library or its store, or
+    // the store or the log could not be written
+    public boolean addBook(Book book) {
+        if (logFailure() != null) {
+            return false;
+        }
+        if (catalogStore != null) {
+            return addStoredBook(book);
+        }
+        long lsn = write(() -> {
+            if (booksById.containsKey(book.getId())) {
+                return -1L;
+            }
+            // Logged before the book is published, so no circulation record can precede it
+            long logged = log(log -> log.logAddBook(book));
+            booksById.put(book.getId(), book);
+            books.add(book);
+            indexBook(book);
+            return logged;
+        });
+        awaitDurable(lsn);
+        return lsn >= 0;
+    }
+
+    // Stored first and logged after, both under the book's stripe: a crash in between
+    // leaves a stored book with no log record, which replay does not need
+    private boolean addStoredBook(Book book) {
+        long lsn;
+        ReentrantLock stripe = bookLocks.lockFor(book.getId());
+        stripe.lock();
+        try {
+            if (booksById.containsKey(book.getId()) || storedBooks.get(book.getId()) != null
+                    || catalogStore.contains(book.getId()) || !putStored(book)) {
+                return false;
+            }
+            book.setListener(storeUpdater);
+            storedBooks.putIfAbsent(book);
+            lsn = log(log -> log.logAddBook(book));
+        } finally {
+            stripe.unlock();
+        }
+        storedBooks.trim();
+        awaitDurable(lsn);
+        return true;
     }
 
-    public void removeBook(Book book) {
-        books.remove(book);
+    // Returns false if the book is not in the library or its store, or the log has failed
+    public boolean removeBook(Book book) {
+        if (logFailure() != null) {
+            return false;
+        }
+        long lsn;
+        ReentrantLock stripe = bookLocks.lockFor(book.getId());
+        stripe.lock();
+        try {
+            lsn = write(() -> {
+                if (books.remove(book)) {
+                    booksById.remove(book.getId(), book);
+                    unindexBook(book);
+                    return log(log -> log.logRemoveBook(book.getId()));
+                }
+                return -1L;
+            });
+            if (lsn < 0 && catalogStore != null) {
+                lsn = removeStoredBook(book);
+            }
+        } finally {
+            stripe.unlock();
+        }
+        awaitDurable(lsn);
+        return lsn >= 0;
+    }
+
+    // Under the book's stripe; returns -1 if the book is not in the store, or not the
+    // copy loaded from it
+    private long removeStoredBook(Book book) {
+        MappedBookStore store = catalogStore;
+        Book loaded = storedBooks.get(book.getId());
+        if (loaded != null && loaded != book) {
+            return -1L;
+        }
+        try {
+            if (!store.remove(book.getId())) {
+                return -1L;
+            }
+        } catch (IOException e) {
+            if (listener != null) {
+                listener.saveFailed(store.getPath().toString(), e);
+            }
+            return -1L;
+        }
+        storedBooks.remove(book.getId());
+        book.setListener(null);
+        return log(log -> log.logRemoveBook(book.getId()));
     }
 
+    // Also finds books in an attached store, loading them if needed; see attachCatalogStore
     public Book findBookById(String id) {
-        for (Book book : books) {
-            if (book.getId().equals(id)) {
+        Book book = booksById.get(id);
+        if (book == null && catalogStore != null) {
+            book = loadStoredBook(id);
+        }
+        return book;
+    }
+
+    // A book in the catalog or a stored book currently loaded, without reading the store
+    private Book loadedBook(String id) {
+        Book book = booksById.get(id);
+        BookWorkingSet loaded = storedBooks;
+        return book == null && loaded != null ? loaded.get(id) : book;
+    }
+
+    // Loads under the book's stripe, so a load never races a removal or a second load of
+    // the same book
+    private Book loadStoredBook(String id) {
+        BookWorkingSet loaded = storedBooks;
+        Book book = loaded.get(id);
+        if (book != null) {
+            return book;
+        }
+        ReentrantLock stripe = bookLocks.lockFor(id);
+        stripe.lock();
+        try {
+            book = loaded.get(id);
+            if (book != null) {
                 return book;
             }
+            book = catalogStore.get(id);
+            if (book == null) {
+                return null;
+            }
+            // A book with copies out is never evicted, so one read from the store has none out
+            book.setAvailableCopies(book.getTotalCopies());
+            book.setListener(storeUpdater);
+            loaded.putIfAbsent(book);
+        } finally {
+            stripe.unlock();
         }
-        return null;
+        loaded.trim();
+        return book;
+    }
+
+    // Searches and listings from here on cover the in-memory catalog only; books in an
+    // attached store are found by ID (see attachCatalogStore)
+    
+    // Accepts ISBN-10 or ISBN-13, with or without hyphens
+    public Book findBookByIsbn(String isbn) {
+        return read(() -> {
+            int[] ordinals = isbnIndex.get(isbn);
+            return ordinals.length > 0 ? bookSlots.get(ordinals[0]) : null;
+        });
+    }
+    
+    // Books whose ISBN starts with a registration group/publisher prefix, in ISBN order
+    public List<Book> findBooksByIsbnPrefix(String prefix, int limit) {
+        return read(() -> booksForOrdinals(isbnIndex.getByPrefix(prefix, limit)));
     }
 
     public List<Book> findBooksByTitle(String title) {
-        List<Book> result = new ArrayList<>();
-        for (Book book : books) {
-            if (book.getTitle().toLowerCase().contains(title.toLowerCase())) {
-                result.add(book);
+        return read(() -> booksForOrdinals(titleIndex.search(title)));
+    }
+
+    public List<Book> findBooksByAuthor(String author) {
+        return read(() -> booksForOrdinals(authorIndex.search(author)));
+    }
+    
+    // Ranked search over title, author, genre and publisher, best match first
+    public List<Book> search(String query, int limit) {
+        return read(() -> booksForOrdinals(searchIndex.search(query, limit)));
+    }
+    
+    // Type-ahead completions from book titles and authors, alphabetically
+    public List<String> suggestBooks(String prefix, int limit) {
+        return read(() -> bookSuggestions.complete(prefix, limit));
+    }
+    
+    // Type-ahead completions from member names, alphabetically
+    public List<String> suggestMembers(String prefix, int limit) {
+        return read(() -> memberSuggestions.complete(prefix, limit));
+    }
+    
+    // Typo-tolerant search over title and author words, e.g. "Tolkein" finds Tolkien.
+    // maxDistance is the number of single-character edits allowed per word.
+    public List<Book> findBooksFuzzy(String query, int maxDistance, int limit) {
+        return read(() -> booksForOrdinals(fuzzyIndex.search(query, maxDistance, limit)));
+    }
+    
+    // Structured filter on genre, publisher and publication year, in catalog order
+    public List<Book> findBooks(BookQuery query) {
+        return read(() -> queryBooks(query));
+    }
+    
+    private List<Book> queryBooks(BookQuery query) {
+        List<PostingList> buckets = new ArrayList<>();
+        if (query.getGenre() != null) {
+            buckets.add(genreIndex.get(query.getGenre()));
+        }
+        if (query.getPublisher() != null) {
+            buckets.add(publisherIndex.get(query.getPublisher()));
+        }
+        if (buckets.isEmpty() && !query.hasYearRange()) {
+            return new ArrayList<>(books);
+        }
+        buckets.sort(Comparator.comparingInt(PostingList::size));
+        
+        // Start from the most selective criterion and narrow down from there
+        int[] candidates;
+        boolean checkYears = false;
+        int yearCount = query.hasYearRange() ? yearIndex.count(query.getFromYear(), query.getToYear()) : Integer.MAX_VALUE;
+        if (!buckets.isEmpty() && buckets.get(0).size() <= yearCount) {
+            candidates = buckets.remove(0).toArray();
+            checkYears = query.hasYearRange();
+        } else {
+            candidates = yearIndex.get(query.getFromYear(), query.getToYear());
+        }
+        
+        for (PostingList bucket : buckets) {
+            if (candidates.length == 0) {
+                break;
             }
+            candidates = bucket.retainAll(candidates, candidates.length);
+        }
+        
+        List<Book> result = booksForOrdinals(candidates);
+        if (checkYears) {
+            result.removeIf(book -> book.getPublicationYear() < query.getFromYear()
+                    || book.getPublicationYear() > query.getToYear());
         }
         return result;
     }
-
-    public List<Book> findBooksByAuthor(String author) {
-        List<Book> result = new ArrayList<>();
-        for (Book book : books) {
-            if (book.getAuthor().toLowerCase().contains(author.toLowerCase())) {
-                result.add(book);
+    
+    // Ordinals grow with insertion order, so sorted ordinals keep the catalog order
+    private void indexBook(Book book) {
+        int ordinal = bookSlots.size();
+        bookSlots.add(book);
+        book.setOrdinal(ordinal);
+        book.setListener(indexUpdater);
+        addFieldIndexes(book);
+        availability.set(ordinal, book.isAvailable());
+        synchronized (checkoutCounts) {
+            Integer count = bookStats.remove(book.getId());
+            if (count != null) {
+                checkoutCounts.put(ordinal, count);
             }
         }
+    }
+    
+    private void unindexBook(Book book) {
+        removeFieldIndexes(book);
+        availability.set(book.getOrdinal(), false);
+        bookSlots.set(book.getOrdinal(), null);
+        book.setListener(null);
+        // Ordinals are not reused, so the count moves back under the book's ID. Clearing
+        // the ordinal in the same block keeps a concurrent checkout from counting into the
+        // dead slot.
+        synchronized (checkoutCounts) {
+            int count = checkoutCounts.remove(book.getOrdinal());
+            if (count > 0) {
+                bookStats.merge(book.getId(), count, Integer::sum);
+            }
+            book.setOrdinal(-1);
+        }
+    }
+    
+    // Counts by ordinal without boxing; circulation does not hold the catalog lock, so a
+    // book removed meanwhile is counted under its ID instead
+    private void countCheckout(Book book) {
+        synchronized (checkoutCounts) {
+            int ordinal = book.getOrdinal();
+            if (ordinal >= 0) {
+                checkoutCounts.increment(ordinal, 1);
+            } else {
+                bookStats.merge(book.getId(), 1, Integer::sum);
+            }
+        }
+    }
+    
+    private void addFieldIndexes(Book book) {
+        int ordinal = book.getOrdinal();
+        titleIndex.add(ordinal, book.getTitle());
+        authorIndex.add(ordinal, book.getAuthor());
+        searchIndex.add(ordinal, book);
+        genreIndex.add(ordinal, book.getGenreCode());
+        publisherIndex.add(ordinal, book.getPublisherCode());
+        yearIndex.add(ordinal, book.getPublicationYear());
+        isbnIndex.add(ordinal, book.getIsbn());
+        fuzzyIndex.add(ordinal, book);
+        bookSuggestions.add(book.getTitle());
+        bookSuggestions.add(book.getAuthor());
+    }
+    
+    private void removeFieldIndexes(Book book) {
+        int ordinal = book.getOrdinal();
+        titleIndex.remove(ordinal);
+        authorIndex.remove(ordinal);
+        searchIndex.remove(ordinal, book);
+        genreIndex.remove(ordinal, book.getGenreCode());
+        publisherIndex.remove(ordinal, book.getPublisherCode());
+        yearIndex.remove(ordinal, book.getPublicationYear());
+        isbnIndex.remove(ordinal, book.getIsbn());
+        fuzzyIndex.remove(ordinal, book);
+        bookSuggestions.remove(book.getTitle());
+        bookSuggestions.remove(book.getAuthor());
+    }
+    
+    private List<Book> booksForOrdinals(int[] ordinals) {
+        List<Book> result = new ArrayList<>(ordinals.length);
+        for (int ordinal : ordinals) {
+            result.add(bookSlots.get(ordinal));
+        }
         return result;
     }
 
     // Member Management Methods
-    public void addMember(Member member) {
-        members.add(member);
+    // Returns false if a member with the same ID is already registered, or the log has failed
+    public boolean addMember(Member member) {
+        if (logFailure() != null) {
+            return false;
+        }
+        long lsn = write(() -> {
+            if (membersById.putIfAbsent(member.getId(), member) != null) {
+                return -1L;
+            }
+            members.add(member);
+            memberSuggestions.add(member.getName());
+            return log(log -> log.logAddMember(member));
+        });
+        awaitDurable(lsn);
+        return lsn >= 0;
     }
 
-    public void removeMember(Member member) {
-        members.remove(member);
+    // Returns false if the member is not registered, or the log has failed
+    public boolean removeMember(Member member) {
+        if (logFailure() != null) {
+            return false;
+        }
+        long lsn;
+        ReentrantLock stripe = memberLocks.lockFor(member.getId());
+        stripe.lock();
+        try {
+            lsn = write(() -> {
+                if (members.remove(member)) {
+                    membersById.remove(member.getId(), member);
+                    memberSuggestions.remove(member.getName());
+                    return log(log -> log.logRemoveMember(member.getId()));
+                }
+                return -1L;
+            });
+        } finally {
+            stripe.unlock();
+        }
+        awaitDurable(lsn);
+        return lsn >= 0;
+    }
+
+    // Members holding a copy of the book, from the loan table kept alongside each member's
+    // borrow list; empty if the book is unknown or on the shelf. A stored book that is not
+    // loaded has no copies out.
+    public List<Member> getBorrowers(String bookId) {
+        Book book = loadedBook(bookId);
+        return book != null ? book.getBorrowers() : new ArrayList<>();
     }
 
     public Member findMemberById(String id) {
-        for (Member member : members) {
-            if (member.getId().equals(id)) {
-                return member;
-            }
-        }
-        return null;
+        return membersById.get(id);
     }
 
     // Transaction Methods
-    public void checkoutBook(String memberId, String bookId) {
+    public CirculationStatus checkoutBook(String memberId, String bookId) {
+        return checkoutBook(memberId, bookId, LocalDateTime.now());
+    }
+    
+    private CirculationStatus checkoutBook(String memberId, String bookId, LocalDateTime timestamp) {
+        if (logFailure() != null) {
+            notifyCirculated(Transaction.Type.CHECKOUT, memberId, bookId, CirculationStatus.LOG_FAILED);
+            return CirculationStatus.LOG_FAILED;
+        }
         Member member = findMemberById(memberId);
-        Book book = findBookById(bookId);
+        CirculationStatus status = CirculationStatus.NOT_FOUND;
+        long lsn = 0;
         
-        if (member != null && book != null && book.isAvailable()) {
-            member.borrowBook(book);
-            transactions.add(new Transaction(book, member, Transaction.Type.CHECKOUT));
-            
-            // Update book stats
-            bookStats.put(bookId, bookStats.getOrDefault(bookId, 0) + 1);
-            
-            System.out.println("Book checked out successfully!");
-        } else {
-            System.out.println("Unable to checkout the book!");
+        if (member != null) {
+            ReentrantLock memberLock = memberLocks.lockFor(memberId);
+            ReentrantLock bookLock = bookLocks.lockFor(bookId);
+            memberLock.lock();
+            bookLock.lock();
+            try {
+                // Resolved under the book's stripe, which removing, loading and evicting a
+                // book also take; the member is re-checked in case it was removed meanwhile
+                Book book = findBookById(bookId);
+                if (book != null && membersById.get(memberId) == member) {
+                    if (member.borrowBook(book)) {
+                        appendTransaction(new Transaction(book, member, Transaction.Type.CHECKOUT, timestamp));
+                        lsn = log(log -> log.logCirculation(Transaction.Type.CHECKOUT, memberId, bookId, timestamp));
+                        
+                        // Update book stats
+                        countCheckout(book);
+                        status = CirculationStatus.SUCCESS;
+                    } else {
+                        status = CirculationStatus.UNAVAILABLE;
+                    }
+                }
+            } finally {
+                bookLock.unlock();
+                memberLock.unlock();
+            }
         }
+        
+        awaitDurable(lsn);
+        notifyCirculated(Transaction.Type.CHECKOUT, memberId, bookId, status);
+        return status;
     }
 
-    public void returnBook(String memberId, String bookId) {
+    public CirculationStatus returnBook(String memberId, String bookId) {
+        return returnBook(memberId, bookId, LocalDateTime.now());
+    }
+    
+    private CirculationStatus returnBook(String memberId, String bookId, LocalDateTime timestamp) {
+        if (logFailure() != null) {
+            notifyCirculated(Transaction.Type.RETURN, memberId, bookId, CirculationStatus.LOG_FAILED);
+            return CirculationStatus.LOG_FAILED;
+        }
         Member member = findMemberById(memberId);
-        Book book = findBookById(bookId);
+        CirculationStatus status = CirculationStatus.NOT_FOUND;
+        long lsn = 0;
         
-        if (member != null && book != null) {
-            if (member.returnBook(book)) {
-                transactions.add(new Transaction(book, member, Transaction.Type.RETURN));
-                System.out.println("Book returned successfully!");
-            } else {
-                System.out.println("This member has not borrowed this book!");
+        if (member != null) {
+            ReentrantLock memberLock = memberLocks.lockFor(memberId);
+            ReentrantLock bookLock = bookLocks.lockFor(bookId);
+            memberLock.lock();
+            bookLock.lock();
+            try {
+                // A book removed from the catalog can still come back from a member who had
+                // it out, live or when replaying a return logged after the removal
+                Book catalogBook = findBookById(bookId);
+                Book book = catalogBook != null ? catalogBook : member.findBorrowedBook(bookId);
+                if (book != null && member.returnBook(book)) {
+                    appendTransaction(new Transaction(book, member, Transaction.Type.RETURN, timestamp));
+                    lsn = log(log -> log.logCirculation(Transaction.Type.RETURN, memberId, bookId, timestamp));
+                    status = CirculationStatus.SUCCESS;
+                } else if (book != null) {
+                    status = CirculationStatus.NOT_BORROWED;
+                }
+            } finally {
+                bookLock.unlock();
+                memberLock.unlock();
             }
-        } else {
-            System.out.println("Unable to return the book!");
         }
+        
+        awaitDurable(lsn);
+        notifyCirculated(Transaction.Type.RETURN, memberId, bookId, status);
+        return status;
+    }
+    
+    private void notifyCirculated(Transaction.Type type, String memberId, String bookId, CirculationStatus status) {
+        LibraryListener current = listener;
+        if (current != null) {
+            current.circulated(type, memberId, bookId, status);
+        }
+    }
+    
+    // Checks out a whole cart for one member. The member's stripe is taken once for the
+    // batch, each book is resolved under its own stripe, and one group commit covers the
+    // whole cart.
+    // Results are in the same order as bookIds.
+    public List<CirculationStatus> checkoutBooks(String memberId, List<String> bookIds) {
+        return circulateBatch(memberId, bookIds, Transaction.Type.CHECKOUT);
+    }
+    
+    public List<CirculationStatus> returnBooks(String memberId, List<String> bookIds) {
+        return circulateBatch(memberId, bookIds, Transaction.Type.RETURN);
+    }
+    
+    private List<CirculationStatus> circulateBatch(String memberId, List<String> bookIds, Transaction.Type type) {
+        List<CirculationStatus> results = new ArrayList<>(bookIds.size());
+        Member member = findMemberById(memberId);
+        CirculationStatus refused = logFailure() != null ? CirculationStatus.LOG_FAILED
+                : member == null ? CirculationStatus.NOT_FOUND : null;
+        if (refused != null) {
+            for (String bookId : bookIds) {
+                results.add(refused);
+                notifyCirculated(type, memberId, bookId, refused);
+            }
+            return results;
+        }
+        
+        LocalDateTime timestamp = LocalDateTime.now();
+        long lsn = 0;
+        ReentrantLock memberLock = memberLocks.lockFor(memberId);
+        memberLock.lock();
+        try {
+            boolean memberCurrent = membersById.get(memberId) == member;
+            for (String bookId : bookIds) {
+                if (!memberCurrent) {
+                    results.add(CirculationStatus.NOT_FOUND);
+                    continue;
+                }
+                // One book stripe at a time, so a cart never holds two of them
+                ReentrantLock bookLock = bookLocks.lockFor(bookId);
+                bookLock.lock();
+                try {
+                    Book book = findBookById(bookId);
+                    if (book == null && type == Transaction.Type.RETURN) {
+                        // Removed from the catalog but still on loan, as in returnBook
+                        book = member.findBorrowedBook(bookId);
+                    }
+                    CirculationStatus status = book != null
+                            ? circulateLocked(member, book, type, timestamp)
+                            : CirculationStatus.NOT_FOUND;
+                    if (status == CirculationStatus.SUCCESS) {
+                        // Logged under the stripe, right after its history entry, so history,
+                        // log and replay see the book's circulation in the same order
+                        lsn = log(log -> log.logCirculation(type, memberId, bookId, timestamp));
+                    }
+                    results.add(status);
+                } finally {
+                    bookLock.unlock();
+                }
+            }
+        } finally {
+            memberLock.unlock();
+        }
+        
+        // One group commit covers the whole cart
+        awaitDurable(lsn);
+        
+        if (listener != null) {
+            for (int i = 0; i < results.size(); i++) {
+                notifyCirculated(type, memberId, bookIds.get(i), results.get(i));
+            }
+        }
+        return results;
+    }
+    
+    // One item of a batch, under the member's and the book's stripes
+    private CirculationStatus circulateLocked(Member member, Book book, Transaction.Type type,
+                                              LocalDateTime timestamp) {
+        if (type == Transaction.Type.CHECKOUT) {
+            if (!member.borrowBook(book)) {
+                return CirculationStatus.UNAVAILABLE;
+            }
+            countCheckout(book);
+        } else if (!member.returnBook(book)) {
+            return CirculationStatus.NOT_BORROWED;
+        }
+        appendTransaction(new Transaction(book, member, type, timestamp));
+        return CirculationStatus.SUCCESS;
+    }
+    
+    private void appendTransaction(Transaction transaction) {
+        history.append(transaction);
     }
 
     public List<Book> getAvailableBooks() {
-        List<Book> availableBooks = new ArrayList<>();
-        for (Book book : books) {
-            if (book.isAvailable()) {
-                availableBooks.add(book);
+        return read(() -> {
+            List<Book> availableBooks = new ArrayList<>(availability.count());
+            for (int ordinal = availability.next(0); ordinal >= 0; ordinal = availability.next(ordinal + 1)) {
+                availableBooks.add(bookSlots.get(ordinal));
             }
-        }
-        return availableBooks;
+            return availableBooks;
+        });
+    }
+    
+    public int getAvailableBookCount() {
+        return availability.count();
+    }
+    
+    // Books in the in-memory catalog, not counting an attached store
+    public int getBookCount() {
+        return booksById.size();
+    }
+    
+    public int getMemberCount() {
+        return membersById.size();
     }
 
     // Getters
+    // These return snapshots; use add/remove so the ID indexes stay in sync
     public List<Book> getBooks() {
-        return books;
+        return read(() -> new ArrayList<>(books));
     }
 
     public List<Member> getMembers() {
-        return members;
+        return read(() -> new ArrayList<>(members));
     }
 
+    // A read-only view of the history as of this call. Transactions are built as they are
+    // read, and sealed segments are loaded when reached; getTransactionsPage pages explicitly.
     public List<Transaction> getTransactions() {
-        return transactions;
+        return history.view();
+    }
+    
+    public int getTransactionCount() {
+        return history.size();
+    }
+    
+    public int getTransactionCount(Transaction.Type type) {
+        return history.count(type);
+    }
+    
+    // Paged queries: start with Page.FIRST and pass each page's next cursor back in.
+    // Book cursors are ordinals, so pages stay stable while books are added or removed.
+    public Page<Book> getBooksPage(int cursor, int limit) {
+        checkLimit(limit);
+        return read(() -> booksPage(cursor, limit));
+    }
+    
+    private Page<Book> booksPage(int cursor, int limit) {
+        List<Book> items = new ArrayList<>(Math.min(limit, books.size()));
+        int ordinal = Math.max(cursor, 0);
+        for (; ordinal < bookSlots.size() && items.size() < limit; ordinal++) {
+            if (bookSlots.get(ordinal) != null) {
+                items.add(bookSlots.get(ordinal));
+            }
+        }
+        while (ordinal < bookSlots.size() && bookSlots.get(ordinal) == null) {
+            ordinal++;
+        }
+        return new Page<>(items, ordinal < bookSlots.size() ? ordinal : -1);
+    }
+    
+    public Page<Book> getAvailableBooksPage(int cursor, int limit) {
+        checkLimit(limit);
+        return read(() -> availableBooksPage(cursor, limit));
+    }
+    
+    private Page<Book> availableBooksPage(int cursor, int limit) {
+        List<Book> items = new ArrayList<>(Math.min(limit, availability.count()));
+        int ordinal = availability.next(Math.max(cursor, 0));
+        while (ordinal >= 0 && items.size() < limit) {
+            items.add(bookSlots.get(ordinal));
+            ordinal = availability.next(ordinal + 1);
+        }
+        return new Page<>(items, ordinal);
+    }
+    
+    public Page<Book> findBooksByTitle(String title, int cursor, int limit) {
+        checkLimit(limit);
+        return read(() -> ordinalPage(titleIndex.search(title, Math.max(cursor, 0), limit + 1), limit));
+    }
+    
+    public Page<Book> findBooksByAuthor(String author, int cursor, int limit) {
+        checkLimit(limit);
+        return read(() -> ordinalPage(authorIndex.search(author, Math.max(cursor, 0), limit + 1), limit));
+    }
+    
+    // Transactions are append-only, so the history position doubles as the cursor. Pages
+    // in sealed history are read from disk when first reached.
+    public Page<Transaction> getTransactionsPage(int cursor, int limit) {
+        checkLimit(limit);
+        int size = history.size();
+        int from = Math.min(Math.max(cursor, 0), size);
+        int to = Math.min(from + limit, size);
+        return new Page<>(history.range(from, to), to < size ? to : -1);
+    }
+    
+    // Positions of the transactions of the given type (null for any) whose book title,
+    // member name, type or timestamp contains text, ignoring case (empty for any), in
+    // history order. Read pages of them with getTransactionsAt.
+    public int[] findTransactions(Transaction.Type type, String text) {
+        return history.find(type, text != null ? text : "");
+    }
+    
+    // The transactions at positions[from, to), e.g. one page of findTransactions' result
+    public List<Transaction> getTransactionsAt(int[] positions, int from, int to) {
+        List<Transaction> items = new ArrayList<>(Math.max(to - from, 0));
+        for (int i = from; i < to; i++) {
+            items.add(history.get(positions[i]));
+        }
+        return items;
+    }
+    
+    // Cursor of the first transaction at or after time, for paging from a date onwards
+    public int findTransactionCursor(LocalDateTime time) {
+        return history.positionAt(time);
+    }
+    
+    // Lazy streams that pull one page at a time instead of copying the whole result
+    public Stream<Book> streamBooks() {
+        return pagedStream(cursor -> getBooksPage(cursor, STREAM_PAGE_SIZE));
+    }
+    
+    public Stream<Book> streamAvailableBooks() {
+        return pagedStream(cursor -> getAvailableBooksPage(cursor, STREAM_PAGE_SIZE));
+    }
+    
+    public Stream<Transaction> streamTransactions() {
+        return pagedStream(cursor -> getTransactionsPage(cursor, STREAM_PAGE_SIZE));
+    }
+    
+    private Page<Book> ordinalPage(int[] ordinals, int limit) {
+        int count = Math.min(ordinals.length, limit);
+        List<Book> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(bookSlots.get(ordinals[i]));
+        }
+        return new Page<>(items, ordinals.length > limit ? ordinals[limit] : -1);
+    }
+    
+    private static void checkLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+    }
+    
+    private static <T> Stream<T> pagedStream(IntFunction<Page<T>> fetch) {
+        Iterator<T> iterator = new Iterator<T>() {
+            private Page<T> page;
+            private int index;
+            
+            @Override
+            public boolean hasNext() {
+                if (page == null) {
+                    page = fetch.apply(Page.FIRST);
+                }
+                while (index >= page.getItems().size() && page.hasNext()) {
+                    page = fetch.apply(page.getNextCursor());
+                    index = 0;
+                }
+                return index < page.getItems().size();
+            }
+            
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.getItems().get(index++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
     }
 }
\ No newline at end of file
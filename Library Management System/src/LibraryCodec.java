@@ -0,0 +1,421 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compact binary format for a whole library, used instead of Java serialization.
+// Every string is stored once in a dictionary and referenced by index, books and members
+// are written once and referenced by index from loans and transactions, numbers are
+// varints and timestamps are nanosecond deltas from the previous transaction.
+//
+// Layout: magic, version, string dictionary, books, members, transactions, stats, LSN and,
+// since version 2, the sealed history segments that precede the transactions.
+// Books and members that only survive in old transactions or loans (removed from the
+// catalog) follow the catalog entries; each table starts with both counts.
+class LibraryCodec {
+    static final int MAGIC = 0x4C4D5342; // "LMSB"
+    private static final int VERSION = 2;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    // Fewest bytes each table entry takes, one per varint, used to reject corrupt counts
+    private static final int MIN_BOOK_BYTES = 9;
+    private static final int MIN_MEMBER_BYTES = 5;
+    private static final int MIN_TRANSACTION_BYTES = 3;
+    private static final int MIN_STAT_BYTES = 2;
+    private static final int MIN_SEGMENT_BYTES = 5;
+
+    // Contents of an encoded library; the decoder hands these back to Library
+    static class Contents {
+        final List<Book> books;
+        final List<Member> members;
+        final List<Transaction> transactions;
+        final Map<String, Integer> bookStats;
+        final long appliedLsn;
+        final List<TransactionHistory.Segment> segments; // older history, kept in segment files
+
+        Contents(List<Book> books, List<Member> members, List<Transaction> transactions,
+                 Map<String, Integer> bookStats, long appliedLsn) {
+            this(books, members, transactions, bookStats, appliedLsn, new ArrayList<>());
+        }
+
+        Contents(List<Book> books, List<Member> members, List<Transaction> transactions,
+                 Map<String, Integer> bookStats, long appliedLsn, List<TransactionHistory.Segment> segments) {
+            this.books = books;
+            this.members = members;
+            this.transactions = transactions;
+            this.bookStats = bookStats;
+            this.appliedLsn = appliedLsn;
+            this.segments = segments;
+        }
+    }
+
+    // True if the stream starts with this format's magic number (peeks at 4 bytes)
+    static boolean isCompact(byte[] head) {
+        return head.length >= 4 && ((head[0] & 0xFF) << 24 | (head[1] & 0xFF) << 16
+                | (head[2] & 0xFF) << 8 | (head[3] & 0xFF)) == MAGIC;
+    }
+
+    static void encode(Contents contents, OutputStream target) throws IOException {
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        Encoder out = new Encoder(strings, dictionary);
+
+        // Book and member tables: catalog entries first, then detached ones
+        Map<Book, Integer> bookRefs = new IdentityHashMap<>();
+        List<Book> bookTable = new ArrayList<>(contents.books);
+        for (Book book : contents.books) {
+            bookRefs.putIfAbsent(book, bookRefs.size());
+        }
+        Map<Member, Integer> memberRefs = new IdentityHashMap<>();
+        List<Member> memberTable = new ArrayList<>(contents.members);
+        for (Member member : contents.members) {
+            memberRefs.putIfAbsent(member, memberRefs.size());
+        }
+        for (Member member : contents.members) {
+            for (Book book : member.getBorrowedBooks()) {
+                if (bookRefs.putIfAbsent(book, bookTable.size()) == null) {
+                    bookTable.add(book);
+                }
+            }
+        }
+        for (Transaction transaction : contents.transactions) {
+            if (bookRefs.putIfAbsent(transaction.getBook(), bookTable.size()) == null) {
+                bookTable.add(transaction.getBook());
+            }
+            if (memberRefs.putIfAbsent(transaction.getMember(), memberTable.size()) == null) {
+                memberTable.add(transaction.getMember());
+            }
+        }
+
+        out.varint(contents.books.size());
+        out.varint(bookTable.size() - contents.books.size());
+        for (Book book : bookTable) {
+            out.string(book.getId());
+            out.string(book.getTitle());
+            out.string(book.getAuthor());
+            out.string(book.getGenre());
+            out.string(book.getIsbn());
+            out.signedVarint(book.getPublicationYear());
+            out.string(book.getPublisher());
+            out.varint(book.getTotalCopies());
+            out.varint(book.getAvailableCopies());
+        }
+
+        out.varint(contents.members.size());
+        out.varint(memberTable.size() - contents.members.size());
+        for (int i = 0; i < memberTable.size(); i++) {
+            Member member = memberTable.get(i);
+            out.string(member.getId());
+            out.string(member.getName());
+            out.string(member.getEmail());
+            out.string(member.getPhoneNumber());
+            // Only catalog members carry loans: a detached member is just a name for old
+            // transactions, and its live loan list may refer to books outside this table
+            List<Book> loans = i < contents.members.size() ? member.getBorrowedBooks() : Collections.emptyList();
+            out.varint(loans.size());
+            for (Book book : loans) {
+                out.varint(bookRefs.get(book));
+            }
+        }
+
+        out.varint(contents.transactions.size());
+        long previousNanos = 0;
+        for (Transaction transaction : contents.transactions) {
+            // Type rides in the low bit of the book reference
+            out.varint((long) bookRefs.get(transaction.getBook()) << 1
+                    | (transaction.getType() == Transaction.Type.RETURN ? 1 : 0));
+            out.varint(memberRefs.get(transaction.getMember()));
+            long nanos = epochNanos(transaction.getTimestamp());
+            out.signedVarint(nanos - previousNanos);
+            previousNanos = nanos;
+        }
+
+        out.varint(contents.bookStats.size());
+        for (Map.Entry<String, Integer> entry : contents.bookStats.entrySet()) {
+            out.string(entry.getKey());
+            out.varint(entry.getValue());
+        }
+        out.varint(contents.appliedLsn);
+
+        out.varint(contents.segments.size());
+        for (TransactionHistory.Segment segment : contents.segments) {
+            out.string(segment.file);
+            out.varint(segment.count);
+            out.varint(segment.checkouts);
+            out.signedVarint(epochNanos(segment.oldest));
+            out.signedVarint(epochNanos(segment.newest));
+        }
+
+        Encoder header = new Encoder(null, null);
+        header.int32(MAGIC);
+        header.varint(VERSION);
+        header.varint(dictionary.size());
+        for (String value : dictionary) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            header.varint(utf8.length);
+            header.bytes(utf8);
+        }
+        header.writeTo(target);
+        out.writeTo(target);
+        target.flush();
+    }
+
+    static Contents decode(InputStream source) throws IOException {
+        Decoder body = new Decoder(source.readAllBytes());
+        if (body.int32() != MAGIC) {
+            throw new IOException("Not a compact library file");
+        }
+        int version = body.count();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported library file version " + version);
+        }
+        body.readDictionary();
+
+        int catalogBooks = body.entries(MIN_BOOK_BYTES);
+        Book[] bookTable = new Book[body.fit((long) catalogBooks + body.count(), MIN_BOOK_BYTES)];
+        for (int i = 0; i < bookTable.length; i++) {
+            Book book = new Book(body.string(), body.string(), body.string(), body.string(),
+                    body.string(), (int) body.signedVarint(), body.string(), body.count());
+            int availableCopies = body.count();
+            if (availableCopies != book.getAvailableCopies()) {
+                book.setAvailableCopies(availableCopies);
+            }
+            bookTable[i] = book;
+        }
+
+        int catalogMembers = body.entries(MIN_MEMBER_BYTES);
+        Member[] memberTable = new Member[body.fit((long) catalogMembers + body.count(), MIN_MEMBER_BYTES)];
+        for (int i = 0; i < memberTable.length; i++) {
+            Member member = new Member(body.string(), body.string(), body.string(), body.string());
+            int loans = body.entries(1);
+            for (int j = 0; j < loans; j++) {
+                member.restoreLoan(bookTable[body.index(bookTable.length)]);
+            }
+            memberTable[i] = member;
+        }
+
+        int transactionCount = body.entries(MIN_TRANSACTION_BYTES);
+        List<Transaction> transactions = new ArrayList<>(transactionCount);
+        long nanos = 0;
+        for (int i = 0; i < transactionCount; i++) {
+            long bookAndType = body.varint();
+            Book book = bookTable[checkIndex(bookAndType >>> 1, bookTable.length)];
+            Transaction.Type type = (bookAndType & 1) != 0 ? Transaction.Type.RETURN : Transaction.Type.CHECKOUT;
+            Member member = memberTable[body.index(memberTable.length)];
+            nanos += body.signedVarint();
+            transactions.add(new Transaction(book, member, type, dateTime(nanos)));
+        }
+
+        int statCount = body.entries(MIN_STAT_BYTES);
+        Map<String, Integer> bookStats = new HashMap<>();
+        for (int i = 0; i < statCount; i++) {
+            bookStats.put(body.string(), body.count());
+        }
+        long appliedLsn = body.varint();
+
+        List<TransactionHistory.Segment> segments = new ArrayList<>();
+        if (version >= 2) {
+            int segmentCount = body.entries(MIN_SEGMENT_BYTES);
+            int first = 0;
+            for (int i = 0; i < segmentCount; i++) {
+                String file = body.string();
+                int count = body.count();
+                TransactionHistory.Segment segment = new TransactionHistory.Segment(file, first, count,
+                        body.count(), dateTime(body.signedVarint()), dateTime(body.signedVarint()));
+                segments.add(segment);
+                first = Math.addExact(first, count);
+            }
+        }
+
+        List<Book> books = new ArrayList<>(catalogBooks);
+        for (int i = 0; i < catalogBooks; i++) {
+            books.add(bookTable[i]);
+        }
+        List<Member> members = new ArrayList<>(catalogMembers);
+        for (int i = 0; i < catalogMembers; i++) {
+            members.add(memberTable[i]);
+        }
+        return new Contents(books, members, transactions, bookStats, appliedLsn, segments);
+    }
+
+    // Timestamps are stored as nanosecond deltas, which stay small for consecutive
+    // transactions; fits any date between 1678 and 2261
+    static long epochNanos(LocalDateTime timestamp) {
+        return Math.addExact(Math.multiplyExact(timestamp.toEpochSecond(ZoneOffset.UTC), NANOS_PER_SECOND),
+                timestamp.getNano());
+    }
+
+    static LocalDateTime dateTime(long epochNanos) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND),
+                (int) Math.floorMod(epochNanos, NANOS_PER_SECOND), ZoneOffset.UTC);
+    }
+
+    private static int checkIndex(long index, int size) throws IOException {
+        if (index < 0 || index >= size) {
+            throw new IOException("Reference " + index + " out of range");
+        }
+        return (int) index;
+    }
+
+    // Writes LEB128 varints and dictionary references into a growable buffer; null strings
+    // are reference 0
+    private static class Encoder {
+        private final Map<String, Integer> strings;
+        private final List<String> dictionary;
+        private byte[] buffer = new byte[8192];
+        private int size;
+
+        Encoder(Map<String, Integer> strings, List<String> dictionary) {
+            this.strings = strings;
+            this.dictionary = dictionary;
+        }
+
+        void varint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void signedVarint(long value) {
+            varint((value << 1) ^ (value >> 63));
+        }
+
+        void int32(int value) {
+            ensure(4);
+            buffer[size++] = (byte) (value >>> 24);
+            buffer[size++] = (byte) (value >>> 16);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        void bytes(byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, buffer, size, value.length);
+            size += value.length;
+        }
+
+        void string(String value) {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+            Integer ref = strings.get(value);
+            if (ref == null) {
+                dictionary.add(value);
+                ref = dictionary.size();
+                strings.put(value, ref);
+            }
+            varint(ref);
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(buffer, 0, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    private static class Decoder {
+        private final byte[] data;
+        private int position;
+        private String[] dictionary = new String[0];
+
+        Decoder(byte[] data) {
+            this.data = data;
+        }
+
+        void readDictionary() throws IOException {
+            dictionary = new String[entries(1)];
+            for (int i = 0; i < dictionary.length; i++) {
+                int length = count();
+                if (length > data.length - position) {
+                    throw new EOFException("Truncated library file");
+                }
+                dictionary[i] = new String(data, position, length, StandardCharsets.UTF_8);
+                position += length;
+            }
+        }
+
+        long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= data.length) {
+                    throw new EOFException("Truncated library file");
+                }
+                int b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        long signedVarint() throws IOException {
+            long raw = varint();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        int int32() throws IOException {
+            if (data.length - position < 4) {
+                throw new EOFException("Truncated library file");
+            }
+            int value = (data[position] & 0xFF) << 24 | (data[position + 1] & 0xFF) << 16
+                    | (data[position + 2] & 0xFF) << 8 | (data[position + 3] & 0xFF);
+            position += 4;
+            return value;
+        }
+
+        // A non-negative int such as a count or size
+        int count() throws IOException {
+            long value = varint();
+            if (value > Integer.MAX_VALUE) {
+                throw new IOException("Count " + value + " out of range");
+            }
+            return (int) value;
+        }
+
+        // A count of table entries that each take at least minBytes, checked against what is
+        // left of the file, so a corrupt count fails here instead of allocating a huge table
+        int entries(int minBytes) throws IOException {
+            return fit(count(), minBytes);
+        }
+
+        int fit(long entries, int minBytes) throws IOException {
+            int remaining = data.length - position;
+            if (entries > remaining / minBytes) {
+                throw new IOException("Corrupt library file: " + entries + " entries cannot fit in the remaining "
+                        + remaining + " bytes");
+            }
+            return (int) entries;
+        }
+
+        int index(int size) throws IOException {
+            return checkIndex(varint(), size);
+        }
+
+        String string() throws IOException {
+            int ref = count();
+            if (ref == 0) {
+                return null;
+            }
+            return dictionary[checkIndex(ref - 1, dictionary.length)];
+        }
+    }
+}
\ No newline at end of file
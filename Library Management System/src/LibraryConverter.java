@@ -0,0 +1,48 @@
+import java.io.File;
+import java.io.IOException;
+
+// Rewrites a library file saved by an older version (Java serialization) in the compact
+// format. Loading already accepts both formats, so this is only needed to convert ahead of
+// time or to compare sizes.
+//
+// Usage: java LibraryConverter <old file> [<new file>]   (default: convert in place)
+public class LibraryConverter {
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: java LibraryConverter <old file> [<new file>]");
+            return;
+        }
+        String source = args[0];
+        String target = args.length == 2 ? args[1] : args[0];
+        if (!new File(source).exists()) {
+            System.out.println("File not found: " + source);
+            return;
+        }
+
+        long sourceSize = new File(source).length();
+        LibraryListener failures = new LibraryListener() {
+            @Override
+            public void loadFailed(String filename, Exception error) {
+                System.out.println("Error loading " + filename + ": " + error.getMessage());
+            }
+
+            @Override
+            public void saveFailed(String filename, IOException error) {
+                System.out.println("Error saving " + filename + ": " + error.getMessage());
+            }
+        };
+
+        long start = System.nanoTime();
+        Library library = Library.loadFromFile(source, failures);
+        if (library.getBookCount() == 0 && library.getMemberCount() == 0 && sourceSize > 0) {
+            System.out.println("Nothing converted.");
+            return;
+        }
+        if (library.saveToFile(target)) {
+            System.out.println("Converted " + library.getBookCount() + " books, " + library.getMemberCount()
+                    + " members and " + library.getTransactionCount() + " transactions: "
+                    + sourceSize + " -> " + new File(target).length() + " bytes in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,39 @@
+import java.io.IOException;
+
+// Optional observer for library events, so front ends can report outcomes without the
+// library writing to the console itself. Every method has an empty default.
+public interface LibraryListener {
+    // Called after each checkout or return attempt, including each item of a batch
+    default void circulated(Transaction.Type type, String memberId, String bookId, CirculationStatus status) {
+    }
+
+    default void saved(String filename) {
+    }
+
+    default void saveFailed(String filename, IOException error) {
+    }
+
+    default void loaded(String filename) {
+    }
+
+    // No file at the given path; a new empty library is used
+    default void noSavedData(String filename) {
+    }
+
+    // The file exists but could not be read; a new empty library is used
+    default void loadFailed(String filename, Exception error) {
+    }
+
+    // Changes recorded in the write-ahead log after the last snapshot were re-applied
+    default void replayed(String filename, int records) {
+    }
+
+    // The write-ahead log could not be read, written or closed
+    default void logFailed(String filename, IOException error) {
+    }
+
+    // A background snapshot failed with something other than an I/O error. Snapshots keep
+    // running and the next one tries again.
+    default void snapshotFailed(String filename, Exception error) {
+    }
+}
\ No newline at end of file
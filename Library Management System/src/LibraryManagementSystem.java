@@ -1,12 +1,63 @@
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
-import java.io.File;
+import java.io.IOException;
 
 public class LibraryManagementSystem {
     private static Library library;
     private static final String DATA_FILE = "library_data.ser";
+    private static final String LOG_FILE = "library_data.wal";
+    private static final int SNAPSHOT_GENERATIONS = 3;
+    private static final int SNAPSHOT_EVERY_CHANGES = 100;
+    private static final long SNAPSHOT_EVERY_MILLIS = 5 * 60 * 1000;
+    private static final int SEARCH_RESULT_LIMIT = 10;
+    private static final int FUZZY_MAX_DISTANCE = 2;
+    private static final int PAGE_SIZE = 20;
     private static Scanner scanner = new Scanner(System.in);
     
+    // Reports save and load outcomes; circulation results are printed from the return values
+    private static final LibraryListener CONSOLE_LISTENER = new LibraryListener() {
+        @Override
+        public void saved(String filename) {
+            System.out.println("Library data saved successfully to " + filename);
+        }
+        
+        @Override
+        public void saveFailed(String filename, IOException error) {
+            System.out.println("Error saving library data: " + error.getMessage());
+        }
+        
+        @Override
+        public void loaded(String filename) {
+            System.out.println("Library data loaded successfully from " + filename);
+        }
+        
+        @Override
+        public void noSavedData(String filename) {
+            System.out.println("No saved library data found. Creating new library.");
+        }
+        
+        @Override
+        public void loadFailed(String filename, Exception error) {
+            System.out.println("Error loading library data: " + error.getMessage());
+        }
+        
+        @Override
+        public void replayed(String filename, int records) {
+            System.out.println("Recovered " + records + " unsaved changes from " + filename);
+        }
+        
+        @Override
+        public void logFailed(String filename, IOException error) {
+            System.out.println("Error accessing change log " + filename + ": " + error.getMessage());
+        }
+        
+        @Override
+        public void snapshotFailed(String filename, Exception error) {
+            System.out.println("Error writing snapshot " + filename + ": " + error);
+        }
+    };
+    
     public static void main(String[] args) {
         // Load library data or initialize new library
         loadLibrary();
@@ -31,7 +82,9 @@ public class LibraryManagementSystem {
                     break;
                 case 5:
                     running = false;
-                    saveLibrary();
+                    // Wait for the final snapshot before the log is closed
+                    library.snapshotNow();
+                    library.close();
                     System.out.println("Thank you for using the Library Management System!");
                     break;
                 default:
@@ -41,12 +94,13 @@ public class LibraryManagementSystem {
         scanner.close();
     }
     
+    // Changes are logged as they happen, so nothing is lost between saves. Snapshots are
+    // written in the background every few changes or minutes; saving takes one right away.
     private static void loadLibrary() {
-        File file = new File(DATA_FILE);
-        if (file.exists()) {
-            library = Library.loadFromFile(DATA_FILE);
-        } else {
-            library = new Library();
+        library = Library.openWithLog(DATA_FILE, LOG_FILE, CONSOLE_LISTENER);
+        library.startSnapshots(DATA_FILE, SNAPSHOT_GENERATIONS, SNAPSHOT_EVERY_CHANGES, SNAPSHOT_EVERY_MILLIS);
+        if (library.getBookCount() == 0 && library.getMemberCount() == 0) {
+            // Nothing saved yet
             // Add sample books
             library.addBook(new Book("B001", "The Great Gatsby", "F. Scott Fitzgerald", "Classic", "978-0743273565", 1925, "Scribner", 3));
             library.addBook(new Book("B002", "To Kill a Mockingbird", "Harper Lee", "Fiction", "978-0061120084", 1960, "HarperCollins", 2));
@@ -59,9 +113,13 @@ public class LibraryManagementSystem {
         }
     }
     
+    // Returns at once; the snapshot is written in the background and reported when done
     private static void saveLibrary() {
-        library.saveToFile(DATA_FILE);
-        System.out.println("Library data saved successfully!");
+        if (library.saveInBackground()) {
+            System.out.println("Saving library data in the background...");
+        } else {
+            System.out.println("Library data is already saved.");
+        }
     }
     
     private static void displayMainMenu() {
@@ -88,10 +146,13 @@ public class LibraryManagementSystem {
             System.out.println("1. Add a new book");
             System.out.println("2. Remove a book");
             System.out.println("3. Find a book by ID");
-            System.out.println("4. Find books by title");
-            System.out.println("5. Find books by author");
-            System.out.println("6. Display all books");
-            System.out.println("7. Return to main menu");
+            System.out.println("4. Find a book by ISBN");
+            System.out.println("5. Find books by ISBN prefix");
+            System.out.println("6. Find books by title");
+            System.out.println("7. Find books by author");
+            System.out.println("8. Search catalog");
+            System.out.println("9. Display all books");
+            System.out.println("10. Return to main menu");
             System.out.print("Enter your choice: ");
             
             int choice = getUserChoice();
@@ -107,15 +168,24 @@ public class LibraryManagementSystem {
                     findBookById();
                     break;
                 case 4:
-                    findBooksByTitle();
+                    findBookByIsbn();
                     break;
                 case 5:
-                    findBooksByAuthor();
+                    findBooksByIsbnPrefix();
                     break;
                 case 6:
-                    displayAllBooks();
+                    findBooksByTitle();
                     break;
                 case 7:
+                    findBooksByAuthor();
+                    break;
+                case 8:
+                    searchCatalog();
+                    break;
+                case 9:
+                    displayAllBooks();
+                    break;
+                case 10:
                     return;
                 default:
                     System.out.println("Invalid choice. Please try again.");
@@ -161,8 +231,10 @@ public class LibraryManagementSystem {
             System.out.println("\n===== Transaction Management =====");
             System.out.println("1. Check out a book");
             System.out.println("2. Return a book");
-            System.out.println("3. View all transactions");
-            System.out.println("4. Return to main menu");
+            System.out.println("3. Check out several books");
+            System.out.println("4. Return several books");
+            System.out.println("5. View all transactions");
+            System.out.println("6. Return to main menu");
             System.out.print("Enter your choice: ");
             
             int choice = getUserChoice();
@@ -175,9 +247,15 @@ public class LibraryManagementSystem {
                     returnBook();
                     break;
                 case 3:
-                    viewAllTransactions();
+                    checkoutBooks();
                     break;
                 case 4:
+                    returnBooks();
+                    break;
+                case 5:
+                    viewAllTransactions();
+                    break;
+                case 6:
                     return;
                 default:
                     System.out.println("Invalid choice. Please try again.");
@@ -199,9 +277,20 @@ public class LibraryManagementSystem {
         System.out.print("Enter genre: ");
         String genre = scanner.nextLine();
         
+        System.out.print("Enter ISBN (leave blank if unknown): ");
+        String isbn = scanner.nextLine().trim();
+        
         Book book = new Book(id, title, author, genre);
-        library.addBook(book);
-        System.out.println("Book added successfully!");
+        if (!isbn.isEmpty()) {
+            book.setIsbn(isbn);
+        }
+        if (library.addBook(book)) {
+            System.out.println("Book added successfully!");
+        } else if (library.findBookById(id) != null) {
+            System.out.println("A book with that ID already exists!");
+        } else {
+            System.out.println("The book could not be added!");
+        }
     }
     
     private static void removeBook() {
@@ -210,8 +299,7 @@ public class LibraryManagementSystem {
         
         Book book = library.findBookById(id);
         if (book != null) {
-            library.removeBook(book);
-            System.out.println("Book removed successfully!");
+            System.out.println(library.removeBook(book) ? "Book removed successfully!" : "The book could not be removed!");
         } else {
             System.out.println("Book not found!");
         }
@@ -224,11 +312,41 @@ public class LibraryManagementSystem {
         Book book = library.findBookById(id);
         if (book != null) {
             System.out.println("Book found: " + book);
+            for (Member member : library.getBorrowers(id)) {
+                System.out.println("  Borrowed by: " + member.getId() + " - " + member.getName());
+            }
         } else {
             System.out.println("Book not found!");
         }
     }
     
+    private static void findBookByIsbn() {
+        System.out.print("Enter or scan ISBN: ");
+        String isbn = scanner.nextLine();
+        
+        Book book = library.findBookByIsbn(isbn);
+        if (book != null) {
+            System.out.println("Book found: " + book);
+        } else {
+            System.out.println("No book found with that ISBN!");
+        }
+    }
+    
+    private static void findBooksByIsbnPrefix() {
+        System.out.print("Enter ISBN prefix: ");
+        String prefix = scanner.nextLine();
+        
+        List<Book> books = library.findBooksByIsbnPrefix(prefix, SEARCH_RESULT_LIMIT);
+        if (!books.isEmpty()) {
+            System.out.println("Books found:");
+            for (Book book : books) {
+                System.out.println(book);
+            }
+        } else {
+            System.out.println("No books found with that ISBN prefix!");
+        }
+    }
+    
     private static void findBooksByTitle() {
         System.out.print("Enter title to search: ");
         String title = scanner.nextLine();
@@ -241,6 +359,7 @@ public class LibraryManagementSystem {
             }
         } else {
             System.out.println("No books found with that title!");
+            suggestSimilarBooks(title);
         }
     }
     
@@ -256,19 +375,57 @@ public class LibraryManagementSystem {
             }
         } else {
             System.out.println("No books found by that author!");
+            suggestSimilarBooks(author);
         }
     }
     
-    private static void displayAllBooks() {
-        List<Book> books = library.getBooks();
+    private static void suggestSimilarBooks(String query) {
+        List<Book> books = library.findBooksFuzzy(query, FUZZY_MAX_DISTANCE, SEARCH_RESULT_LIMIT);
+        if (!books.isEmpty()) {
+            System.out.println("Did you mean:");
+            for (Book book : books) {
+                System.out.println(book);
+            }
+        }
+    }
+    
+    private static void searchCatalog() {
+        System.out.print("Enter search terms: ");
+        String query = scanner.nextLine();
+        
+        List<Book> books = library.search(query, SEARCH_RESULT_LIMIT);
         if (!books.isEmpty()) {
-            System.out.println("All Books:");
+            System.out.println("Top matches:");
             for (Book book : books) {
                 System.out.println(book);
             }
         } else {
+            System.out.println("No books matched your search!");
+        }
+    }
+    
+    private static void displayAllBooks() {
+        Page<Book> page = library.getBooksPage(Page.FIRST, PAGE_SIZE);
+        if (page.getItems().isEmpty()) {
             System.out.println("No books in the library!");
+            return;
         }
+        
+        System.out.println("All Books:");
+        while (true) {
+            for (Book book : page.getItems()) {
+                System.out.println(book);
+            }
+            if (!page.hasNext() || !showNextPage()) {
+                return;
+            }
+            page = library.getBooksPage(page.getNextCursor(), PAGE_SIZE);
+        }
+    }
+    
+    private static boolean showNextPage() {
+        System.out.print("-- Press Enter for more, or type q to stop -- ");
+        return !scanner.nextLine().trim().equalsIgnoreCase("q");
     }
     
     // Member management methods
@@ -286,8 +443,13 @@ public class LibraryManagementSystem {
         String phoneNumber = scanner.nextLine();
         
         Member member = new Member(id, name, email, phoneNumber);
-        library.addMember(member);
-        System.out.println("Member added successfully!");
+        if (library.addMember(member)) {
+            System.out.println("Member added successfully!");
+        } else if (library.findMemberById(id) != null) {
+            System.out.println("A member with that ID already exists!");
+        } else {
+            System.out.println("The member could not be added!");
+        }
     }
     
     private static void removeMember() {
@@ -296,8 +458,7 @@ public class LibraryManagementSystem {
         
         Member member = library.findMemberById(id);
         if (member != null) {
-            library.removeMember(member);
-            System.out.println("Member removed successfully!");
+            System.out.println(library.removeMember(member) ? "Member removed successfully!" : "The member could not be removed!");
         } else {
             System.out.println("Member not found!");
         }
@@ -335,7 +496,19 @@ public class LibraryManagementSystem {
         System.out.print("Enter book ID: ");
         String bookId = scanner.nextLine();
         
-        library.checkoutBook(memberId, bookId);
+        switch (library.checkoutBook(memberId, bookId)) {
+            case SUCCESS:
+                System.out.println("Book checked out successfully!");
+                break;
+            case UNAVAILABLE:
+                System.out.println("No copies of this book are available!");
+                break;
+            case LOG_FAILED:
+                System.out.println("The change log has failed, so the checkout was not made!");
+                break;
+            default:
+                System.out.println("Unable to checkout the book!");
+        }
     }
     
     private static void returnBook() {
@@ -345,18 +518,76 @@ public class LibraryManagementSystem {
         System.out.print("Enter book ID: ");
         String bookId = scanner.nextLine();
         
-        library.returnBook(memberId, bookId);
+        switch (library.returnBook(memberId, bookId)) {
+            case SUCCESS:
+                System.out.println("Book returned successfully!");
+                break;
+            case NOT_BORROWED:
+                System.out.println("This member has not borrowed this book!");
+                break;
+            case LOG_FAILED:
+                System.out.println("The change log has failed, so the return was not made!");
+                break;
+            default:
+                System.out.println("Unable to return the book!");
+        }
+    }
+    
+    private static void checkoutBooks() {
+        System.out.print("Enter member ID: ");
+        String memberId = scanner.nextLine();
+        
+        List<String> bookIds = readBookIds();
+        printBatchResults(bookIds, library.checkoutBooks(memberId, bookIds));
+    }
+    
+    private static void returnBooks() {
+        System.out.print("Enter member ID: ");
+        String memberId = scanner.nextLine();
+        
+        List<String> bookIds = readBookIds();
+        printBatchResults(bookIds, library.returnBooks(memberId, bookIds));
+    }
+    
+    // Reads book IDs separated by commas or whitespace
+    private static List<String> readBookIds() {
+        System.out.print("Enter book IDs (separated by commas or spaces): ");
+        List<String> bookIds = new ArrayList<>();
+        for (String id : scanner.nextLine().split("[,\\s]+")) {
+            if (!id.isEmpty()) {
+                bookIds.add(id);
+            }
+        }
+        return bookIds;
+    }
+    
+    private static void printBatchResults(List<String> bookIds, List<CirculationStatus> results) {
+        int succeeded = 0;
+        for (int i = 0; i < bookIds.size(); i++) {
+            System.out.println(bookIds.get(i) + ": " + results.get(i));
+            if (results.get(i) == CirculationStatus.SUCCESS) {
+                succeeded++;
+            }
+        }
+        System.out.println(succeeded + " of " + bookIds.size() + " books processed successfully.");
     }
     
     private static void viewAllTransactions() {
-        List<Transaction> transactions = library.getTransactions();
-        if (!transactions.isEmpty()) {
-            System.out.println("All Transactions:");
-            for (Transaction transaction : transactions) {
+        Page<Transaction> page = library.getTransactionsPage(Page.FIRST, PAGE_SIZE);
+        if (page.getItems().isEmpty()) {
+            System.out.println("No transactions in the library!");
+            return;
+        }
+        
+        System.out.println("All Transactions:");
+        while (true) {
+            for (Transaction transaction : page.getItems()) {
                 System.out.println(transaction);
             }
-        } else {
-            System.out.println("No transactions in the library!");
+            if (!page.hasNext() || !showNextPage()) {
+                return;
+            }
+            page = library.getTransactionsPage(page.getNextCursor(), PAGE_SIZE);
         }
     }
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableRowSorter;
 import javax.swing.table.JTableHeader;
@@ -21,7 +22,11 @@ import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Vector;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 
 @SuppressWarnings("unused")
 public class LibraryManagementSystemGUI extends JFrame {
@@ -34,6 +39,11 @@ public class LibraryManagementSystemGUI extends JFrame {
     private static final Color BACKGROUND_COLOR = new Color(245, 245, 245); // Light Gray
     private static final Color TEXT_COLOR = new Color(33, 33, 33); // Dark Gray
     
+    private static final int SEARCH_RESULT_LIMIT = 50;
+    private static final int SUGGESTION_LIMIT = 8;
+    private static final int TABLE_PAGE_SIZE = 500;
+    private static final int FILTER_DELAY_MS = 250; // pause in typing before a table is filtered
+    
     private transient Library library;
     private JTabbedPane tabbedPane;
     private JPanel bookPanel, memberPanel, transactionPanel;
@@ -47,6 +57,8 @@ public class LibraryManagementSystemGUI extends JFrame {
     private JTextField bookIdField, bookTitleField, bookAuthorField, bookGenreField;
     private JTextField bookSearchField;
     private JComboBox<String> bookGenreComboBox;
+    private String bookGenreFilter; // applied on every refresh of the book table; null for all genres
+    private Timer bookFilterTimer;
     
     // Member Panel Components
     private JTable memberTable;
@@ -54,11 +66,11 @@ public class LibraryManagementSystemGUI extends JFrame {
     private TableRowSorter<DefaultTableModel> memberTableSorter;
     private JTextField memberIdField, memberNameField, memberEmailField, memberPhoneField;
     private JTextField memberSearchField;
+    private Timer memberFilterTimer;
     
     // Transaction Panel Components
     private JTable transactionTable;
-    private DefaultTableModel transactionTableModel;
-    private TableRowSorter<DefaultTableModel> transactionTableSorter;
+    private TransactionTableModel transactionTableModel;
     private JComboBox<String> memberComboBox;
     private JComboBox<String> bookComboBox;
     private JComboBox<String> transactionTypeComboBox;
@@ -321,30 +333,43 @@ public class LibraryManagementSystemGUI extends JFrame {
             }
         });
         
-        // Add real-time search functionality
+        // Add real-time search functionality: the table is reloaded from the catalog's
+        // indexes once typing pauses
+        bookFilterTimer = debounced(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                refreshBookTable();
+            }
+        });
         bookSearchField.getDocument().addDocumentListener(new DocumentListener() {
             @Override
             public void insertUpdate(DocumentEvent e) {
-                filterBooks();
+                bookFilterTimer.restart();
             }
             
             @Override
             public void removeUpdate(DocumentEvent e) {
-                filterBooks();
+                bookFilterTimer.restart();
             }
             
             @Override
             public void changedUpdate(DocumentEvent e) {
-                filterBooks();
+                bookFilterTimer.restart();
             }
-            
-            private void filterBooks() {
-                String text = bookSearchField.getText();
-                if (text.equals("Search books...")) {
-                    bookTableSorter.setRowFilter(null);
-                } else {
-                    bookTableSorter.setRowFilter(RowFilter.regexFilter("(?i)" + text));
-                }
+        });
+        
+        // Pressing Enter runs a ranked catalog search instead of filtering the table
+        bookSearchField.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                searchCatalog();
+            }
+        });
+        
+        new SuggestionPopup(bookSearchField, "Search books...", new Function<String, List<String>>() {
+            @Override
+            public List<String> apply(String prefix) {
+                return library.suggestBooks(prefix, SUGGESTION_LIMIT);
             }
         });
         
@@ -370,11 +395,8 @@ public class LibraryManagementSystemGUI extends JFrame {
             @Override
             public void actionPerformed(ActionEvent e) {
                 String selectedGenre = (String) bookGenreComboBox.getSelectedItem();
-                if (selectedGenre.equals("All Genres")) {
-                    bookTableSorter.setRowFilter(null);
-                } else {
-                    bookTableSorter.setRowFilter(RowFilter.regexFilter(selectedGenre, 3)); // Filter on genre column (index 3)
-                }
+                bookGenreFilter = selectedGenre.equals("All Genres") ? null : selectedGenre;
+                refreshBookTable();
             }
         });
         
@@ -633,14 +655,8 @@ public class LibraryManagementSystemGUI extends JFrame {
                 JLabel checkedOutLabel = (JLabel) checkedOutPanel.getClientProperty("valueLabel");
                 
                 // Calculate statistics
-                int totalBooks = library.getBooks().size();
-                int availableBooks = 0;
-            
-                for (Book book : library.getBooks()) {
-                    if (book.isAvailable()) {
-                        availableBooks++;
-                    }
-                }
+                int totalBooks = library.getBookCount();
+                int availableBooks = library.getAvailableBookCount();
                 
                 int checkedOut = totalBooks - availableBooks;
                 
@@ -741,30 +757,40 @@ public class LibraryManagementSystemGUI extends JFrame {
             }
         });
         
-        // Add real-time search functionality
+        // Add real-time search functionality, once typing pauses. The text is matched
+        // literally, so characters such as ( or [ are searched for rather than parsed.
+        memberFilterTimer = debounced(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                String text = memberSearchField.getText();
+                if (text.isEmpty() || text.equals("Search members...")) {
+                    memberTableSorter.setRowFilter(null);
+                } else {
+                    memberTableSorter.setRowFilter(RowFilter.regexFilter("(?i)" + Pattern.quote(text)));
+                }
+            }
+        });
         memberSearchField.getDocument().addDocumentListener(new DocumentListener() {
             @Override
             public void insertUpdate(DocumentEvent e) {
-                filterMembers();
+                memberFilterTimer.restart();
             }
             
             @Override
             public void removeUpdate(DocumentEvent e) {
-                filterMembers();
+                memberFilterTimer.restart();
             }
             
             @Override
             public void changedUpdate(DocumentEvent e) {
-                filterMembers();
+                memberFilterTimer.restart();
             }
-            
-            private void filterMembers() {
-                String text = memberSearchField.getText();
-                if (text.equals("Search members...")) {
-                    memberTableSorter.setRowFilter(null);
-                } else {
-                    memberTableSorter.setRowFilter(RowFilter.regexFilter("(?i)" + text));
-                }
+        });
+        
+        new SuggestionPopup(memberSearchField, "Search members...", new Function<String, List<String>>() {
+            @Override
+            public List<String> apply(String prefix) {
+                return library.suggestMembers(prefix, SUGGESTION_LIMIT);
             }
         });
         
@@ -966,7 +992,7 @@ public class LibraryManagementSystemGUI extends JFrame {
                 JLabel activeBorrowersLabel = (JLabel) activeBorrowersPanel.getClientProperty("valueLabel");
             
                 // Calculate statistics
-                int totalMembers = library.getMembers().size();
+                int totalMembers = library.getMemberCount();
                 int activeBorrowers = 0;
                 
                 for (Member member : library.getMembers()) {
@@ -990,13 +1016,7 @@ public class LibraryManagementSystemGUI extends JFrame {
         transactionPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
         
         // Create transaction table with enhanced styling
-        String[] transactionColumns = {"Book", "Member", "Type", "Timestamp"};
-        transactionTableModel = new DefaultTableModel(transactionColumns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false; // Make table read-only
-            }
-        };
+        transactionTableModel = new TransactionTableModel();
         
         transactionTable = new JTable(transactionTableModel);
         transactionTable.setRowHeight(30);
@@ -1005,7 +1025,6 @@ public class LibraryManagementSystemGUI extends JFrame {
         transactionTable.setSelectionBackground(SECONDARY_COLOR);
         transactionTable.setSelectionForeground(Color.WHITE);
         transactionTable.setFont(new Font("Segoe UI", Font.PLAIN, 14));
-        transactionTable.setAutoCreateRowSorter(true);
         
         // Customize table header
         JTableHeader header = transactionTable.getTableHeader();
@@ -1014,10 +1033,6 @@ public class LibraryManagementSystemGUI extends JFrame {
         header.setFont(new Font("Segoe UI", Font.BOLD, 14));
         header.setPreferredSize(new Dimension(header.getWidth(), 40));
         
-        // Add table sorter for filtering
-        transactionTableSorter = new TableRowSorter<>(transactionTableModel);
-        transactionTable.setRowSorter(transactionTableSorter);
-        
         // Create scroll pane with custom styling
         JScrollPane transactionScrollPane = new JScrollPane(transactionTable);
         transactionScrollPane.setBorder(BorderFactory.createLineBorder(new Color(200, 200, 200)));
@@ -1090,11 +1105,16 @@ public class LibraryManagementSystemGUI extends JFrame {
             
             private void filterTransactions() {
                 String text = transactionSearchField.getText();
-                if (text.equals("Search transactions...")) {
-                    transactionTableSorter.setRowFilter(null);
-                } else {
-                    transactionTableSorter.setRowFilter(RowFilter.regexFilter("(?i)" + text));
-                }
+                transactionTableModel.setText(text.equals("Search transactions...") ? "" : text);
+            }
+        });
+        
+        new SuggestionPopup(transactionSearchField, "Search transactions...", new Function<String, List<String>>() {
+            @Override
+            public List<String> apply(String prefix) {
+                List<String> suggestions = new ArrayList<>(library.suggestBooks(prefix, SUGGESTION_LIMIT));
+                suggestions.addAll(library.suggestMembers(prefix, SUGGESTION_LIMIT));
+                return suggestions.subList(0, Math.min(SUGGESTION_LIMIT, suggestions.size()));
             }
         });
         
@@ -1120,11 +1140,7 @@ public class LibraryManagementSystemGUI extends JFrame {
             @Override
             public void actionPerformed(ActionEvent e) {
                 String selectedType = (String) transactionTypeComboBox.getSelectedItem();
-                if (selectedType.equals("All Types")) {
-                    transactionTableSorter.setRowFilter(null);
-                } else {
-                    transactionTableSorter.setRowFilter(RowFilter.regexFilter(selectedType, 2)); // Filter on type column (index 2)
-                }
+                transactionTableModel.setType(selectedType.equals("All Types") ? null : Transaction.Type.valueOf(selectedType));
             }
         });
         
@@ -1304,16 +1320,8 @@ public class LibraryManagementSystemGUI extends JFrame {
                 JLabel returnsLabel = (JLabel) returnsPanel.getClientProperty("valueLabel");
                 
                 // Calculate statistics
-                int checkouts = 0;
-                int returns = 0;
-                
-                for (Transaction transaction : library.getTransactions()) {
-                    if (transaction.getType() == Transaction.Type.CHECKOUT) {
-                        checkouts++;
-                    } else if (transaction.getType() == Transaction.Type.RETURN) {
-                        returns++;
-                    }
-                }
+                int checkouts = library.getTransactionCount(Transaction.Type.CHECKOUT);
+                int returns = library.getTransactionCount(Transaction.Type.RETURN);
                 
                 // Update the labels
                 checkoutsLabel.setText(String.valueOf(checkouts));
@@ -1332,17 +1340,57 @@ public class LibraryManagementSystemGUI extends JFrame {
             memberComboBox.addItem(member.getId() + " - " + member.getName());
         }
         
-        for (Book book : library.getBooks()) {
-            if (book.isAvailable()) {
-                bookComboBox.addItem(book.getId() + " - " + book.getTitle());
-            }
+        for (Book book : library.getAvailableBooks()) {
+            bookComboBox.addItem(book.getId() + " - " + book.getTitle());
         }
     }
     
+    // Shows the books matching the search box, if anything is typed in it, within the
+    // selected genre
     private void refreshBookTable() {
+        String text = bookSearchField.getText().trim();
+        if (!text.isEmpty() && !text.equals("Search books...")) {
+            populateBookTable(matchingBooks(text));
+        } else {
+            populateBookTable(bookGenreFilter == null
+                    ? library.getBooks()
+                    : library.findBooks(new BookQuery().genre(bookGenreFilter)));
+        }
+    }
+    
+    // The book with that ID, then title and author matches, all looked up through the
+    // catalog's indexes, so filtering costs the matches rather than a pass over every row
+    private List<Book> matchingBooks(String text) {
+        Map<String, Book> matches = new LinkedHashMap<>();
+        Book byId = library.findBookById(text);
+        if (byId != null) {
+            matches.put(byId.getId(), byId);
+        }
+        for (Book book : library.findBooksByTitle(text)) {
+            matches.putIfAbsent(book.getId(), book);
+        }
+        for (Book book : library.findBooksByAuthor(text)) {
+            matches.putIfAbsent(book.getId(), book);
+        }
+        List<Book> books = new ArrayList<>(matches.values());
+        if (bookGenreFilter != null) {
+            books.removeIf(book -> !bookGenreFilter.equalsIgnoreCase(book.getGenre()));
+        }
+        return books;
+    }
+    
+    // A one-shot timer that every edit restarts, so a filter runs once typing pauses
+    // rather than on each keystroke
+    private static Timer debounced(ActionListener action) {
+        Timer timer = new Timer(FILTER_DELAY_MS, action);
+        timer.setRepeats(false);
+        return timer;
+    }
+    
+    private void populateBookTable(List<Book> books) {
         bookTableModel.setRowCount(0);
         
-        for (Book book : library.getBooks()) {
+        for (Book book : books) {
             Object[] row = {
                 book.getId(),
                 book.getTitle(),
@@ -1370,17 +1418,7 @@ public class LibraryManagementSystemGUI extends JFrame {
     }
     
     private void refreshTransactionTable() {
-        transactionTableModel.setRowCount(0);
-        
-        for (Transaction transaction : library.getTransactions()) {
-            Object[] row = {
-                transaction.getBook().getTitle(),
-                transaction.getMember().getName(),
-                transaction.getType().toString(),
-                transaction.getTimestamp().toString()
-            };
-            transactionTableModel.addRow(row);
-        }
+        transactionTableModel.refresh();
     }
     
     private void addBook() {
@@ -1395,7 +1433,10 @@ public class LibraryManagementSystemGUI extends JFrame {
         }
         
         Book book = new Book(id, title, author, genre);
-        library.addBook(book);
+        if (!library.addBook(book)) {
+            JOptionPane.showMessageDialog(this, "A book with that ID already exists", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
         
         refreshBookTable();
         clearBookFields();
@@ -1413,54 +1454,30 @@ public class LibraryManagementSystemGUI extends JFrame {
         Book book = library.findBookById(bookId);
         
         if (book != null) {
-            library.removeBook(book);
+            if (!library.removeBook(book)) {
+                JOptionPane.showMessageDialog(this, "The book could not be removed", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
             refreshBookTable();
             JOptionPane.showMessageDialog(this, "Book removed successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
         }
     }
     
-    private void searchBooksByTitle() {
+    private void searchCatalog() {
         String searchTerm = bookSearchField.getText().trim();
-        if (searchTerm.isEmpty()) {
+        if (searchTerm.isEmpty() || searchTerm.equals("Search books...")) {
             JOptionPane.showMessageDialog(this, "Please enter a search term", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
         
-        List<Book> books = library.findBooksByTitle(searchTerm);
-        bookTableModel.setRowCount(0);
-        
-        for (Book book : books) {
-            Object[] row = {
-                book.getId(),
-                book.getTitle(),
-                book.getAuthor(),
-                book.getGenre(),
-                book.isAvailable() ? "Yes" : "No"
-            };
-            bookTableModel.addRow(row);
-        }
-    }
-    
-    private void searchBooksByAuthor() {
-        String searchTerm = bookSearchField.getText().trim();
-        if (searchTerm.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Please enter a search term", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        
-        List<Book> books = library.findBooksByAuthor(searchTerm);
-        bookTableModel.setRowCount(0);
-        
-        for (Book book : books) {
-            Object[] row = {
-                book.getId(),
-                book.getTitle(),
-                book.getAuthor(),
-                book.getGenre(),
-                book.isAvailable() ? "Yes" : "No"
-            };
-            bookTableModel.addRow(row);
+        List<Book> books = library.search(searchTerm, SEARCH_RESULT_LIMIT);
+        if (bookGenreFilter != null) {
+            books.removeIf(book -> !bookGenreFilter.equalsIgnoreCase(book.getGenre()));
         }
+        // A pending filter would replace the ranked results
+        bookFilterTimer.stop();
+        populateBookTable(books);
+        updateStatusMessage("Showing top " + books.size() + " matches for \"" + searchTerm + "\"");
     }
     
     private void clearBookFields() {
@@ -1482,7 +1499,10 @@ public class LibraryManagementSystemGUI extends JFrame {
         }
         
         Member member = new Member(id, name, email, phone);
-        library.addMember(member);
+        if (!library.addMember(member)) {
+            JOptionPane.showMessageDialog(this, "A member with that ID already exists", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
         
         refreshMemberTable();
         clearMemberFields();
@@ -1500,7 +1520,10 @@ public class LibraryManagementSystemGUI extends JFrame {
         Member member = library.findMemberById(memberId);
         
         if (member != null) {
-            library.removeMember(member);
+            if (!library.removeMember(member)) {
+                JOptionPane.showMessageDialog(this, "The member could not be removed", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
             refreshMemberTable();
             JOptionPane.showMessageDialog(this, "Member removed successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
         }
@@ -1525,7 +1548,17 @@ public class LibraryManagementSystemGUI extends JFrame {
         String memberId = memberIdWithName.split(" - ")[0];
         String bookId = bookIdWithTitle.split(" - ")[0];
         
-        library.checkoutBook(memberId, bookId);
+        CirculationStatus status = library.checkoutBook(memberId, bookId);
+        if (status != CirculationStatus.SUCCESS) {
+            String message = status == CirculationStatus.UNAVAILABLE
+                    ? "No copies of this book are available"
+                    : status == CirculationStatus.LOG_FAILED
+                    ? "The change log has failed, so the checkout was not made"
+                    : "Book or member no longer exists";
+            JOptionPane.showMessageDialog(this, message, "Error", JOptionPane.ERROR_MESSAGE);
+            updateComboBoxes();
+            return;
+        }
         
         refreshBookTable();
         refreshMemberTable();
@@ -1569,7 +1602,16 @@ public class LibraryManagementSystemGUI extends JFrame {
         }
         
         if (book != null && member != null) {
-            library.returnBook(member.getId(), book.getId());
+            CirculationStatus status = library.returnBook(member.getId(), book.getId());
+            if (status != CirculationStatus.SUCCESS) {
+                String message = status == CirculationStatus.NOT_BORROWED
+                        ? "This member has already returned this book"
+                        : status == CirculationStatus.LOG_FAILED
+                        ? "The change log has failed, so the return was not made"
+                        : "Book or member no longer exists";
+                JOptionPane.showMessageDialog(this, message, "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
             
             refreshBookTable();
             refreshMemberTable();
@@ -1580,6 +1622,161 @@ public class LibraryManagementSystemGUI extends JFrame {
         }
     }
     
+    // Read-only transaction table that fetches rows a page at a time as the table scrolls to
+    // them, keeping only the last few pages, so a long history is never loaded in full.
+    // The type and search filters run as a history query, and the table pages over its
+    // matching positions.
+    private class TransactionTableModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+        private static final int CACHED_PAGES = 8;
+        private final String[] columns = {"Book", "Member", "Type", "Timestamp"};
+        private final Map<Integer, List<Transaction>> pages = new LinkedHashMap<Integer, List<Transaction>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Transaction>> eldest) {
+                return size() > CACHED_PAGES;
+            }
+        };
+        private Transaction.Type type;
+        private String text = "";
+        private int[] matches; // null while nothing is filtered
+        private int rowCount;
+        
+        void setType(Transaction.Type type) {
+            this.type = type;
+            refresh();
+        }
+        
+        void setText(String text) {
+            this.text = text.trim();
+            refresh();
+        }
+        
+        void refresh() {
+            pages.clear();
+            if (type == null && text.isEmpty()) {
+                matches = null;
+                rowCount = library.getTransactionCount();
+            } else {
+                matches = library.findTransactions(type, text);
+                rowCount = matches.length;
+            }
+            fireTableDataChanged();
+        }
+        
+        @Override
+        public int getRowCount() {
+            return rowCount;
+        }
+        
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+        
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+        
+        @Override
+        public Object getValueAt(int row, int column) {
+            List<Transaction> page = pages.get(row / TABLE_PAGE_SIZE);
+            if (page == null) {
+                int from = row / TABLE_PAGE_SIZE * TABLE_PAGE_SIZE;
+                page = matches == null
+                        ? library.getTransactionsPage(from, TABLE_PAGE_SIZE).getItems()
+                        : library.getTransactionsAt(matches, from, Math.min(from + TABLE_PAGE_SIZE, matches.length));
+                pages.put(row / TABLE_PAGE_SIZE, page);
+            }
+            Transaction transaction = page.get(row % TABLE_PAGE_SIZE);
+            switch (column) {
+                case 0:
+                    return transaction.getBook().getTitle();
+                case 1:
+                    return transaction.getMember().getName();
+                case 2:
+                    return transaction.getType().toString();
+                default:
+                    return transaction.getTimestamp().toString();
+            }
+        }
+    }
+    
+    // Drop-down of type-ahead completions under a search field, fed from the library's prefix index
+    private class SuggestionPopup implements DocumentListener {
+        private final JTextField field;
+        private final String placeholder;
+        private final Function<String, List<String>> source;
+        private final JPopupMenu popup;
+        private boolean applying;
+        
+        SuggestionPopup(JTextField field, String placeholder, Function<String, List<String>> source) {
+            this.field = field;
+            this.placeholder = placeholder;
+            this.source = source;
+            this.popup = new JPopupMenu();
+            this.popup.setFocusable(false);
+            field.getDocument().addDocumentListener(this);
+        }
+        
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            refresh();
+        }
+        
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            refresh();
+        }
+        
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+            refresh();
+        }
+        
+        private void refresh() {
+            if (applying) {
+                return;
+            }
+            // Wait until the document change has been applied before reading the text
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    showSuggestions();
+                }
+            });
+        }
+        
+        private void showSuggestions() {
+            popup.setVisible(false);
+            popup.removeAll();
+            
+            String text = field.getText();
+            if (!field.isFocusOwner() || text.trim().isEmpty() || text.equals(placeholder)) {
+                return;
+            }
+            
+            for (final String suggestion : source.apply(text)) {
+                JMenuItem item = new JMenuItem(suggestion);
+                item.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+                item.addActionListener(new ActionListener() {
+                    @Override
+                    public void actionPerformed(ActionEvent e) {
+                        applying = true;
+                        field.setText(suggestion);
+                        applying = false;
+                        popup.setVisible(false);
+                    }
+                });
+                popup.add(item);
+            }
+            
+            if (popup.getComponentCount() > 0) {
+                popup.show(field, 0, field.getHeight());
+            }
+        }
+    }
+    
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             try {
@@ -0,0 +1,37 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+// Fixed pool of locks picked by key hash, so operations on unrelated IDs rarely contend
+// while the lock count stays bounded no matter how many books or members exist.
+class LockStripes {
+    private final ReentrantLock[] locks;
+
+    LockStripes(int minimumStripes) {
+        int size = Integer.highestOneBit(Math.max(1, minimumStripes - 1)) << 1;
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    // Sized for the machine: a few stripes per core keeps collisions unlikely
+    static LockStripes forCores() {
+        return new LockStripes(Math.max(16, Runtime.getRuntime().availableProcessors() * 4));
+    }
+
+    int indexFor(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (locks.length - 1);
+    }
+
+    ReentrantLock lockFor(String key) {
+        return locks[indexFor(key)];
+    }
+
+    ReentrantLock get(int index) {
+        return locks[index];
+    }
+
+    int size() {
+        return locks.length;
+    }
+}
\ No newline at end of file
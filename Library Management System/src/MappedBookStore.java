@@ -0,0 +1,302 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Disk-resident book catalog for collections too large to hold on the heap. Records are
+// appended to <name>.books and found through an open-addressing hash table of
+// (ID hash, record offset) slots in <name>.idx, which is memory-mapped. Opening a store
+// reads only the index header, and get() materializes a fresh Book from its record. The
+// store answers lookups by ID only: it has no title, author or ISBN index of its own.
+//
+// Record: [int length][int year][int totalCopies][int availableCopies][id][title][author]
+// [genre][isbn][publisher], each string as [int byte length or -1 for null][UTF-8 bytes].
+// A replaced or removed record stays in the file; only its index slot changes.
+public class MappedBookStore implements Closeable {
+    private static final int INDEX_MAGIC = 0x4C4D5832; // "LMX2", records with availableCopies
+    private static final int INDEX_HEADER = 16;
+    private static final int SLOT_SIZE = 16;
+    private static final int MIN_SLOTS = 1024;
+    private static final long EMPTY = 0;
+    private static final long DELETED = -1;
+
+    private final Path recordPath;
+    private final Path indexPath;
+    private final FileChannel records;
+
+    // Guarded by this; get() copies index and slots under the lock and probes without it
+    private MappedByteBuffer index;
+    private int slots;
+    private int size;
+    private int used; // live and deleted slots, which both lengthen probe chains
+
+    private MappedBookStore(Path base) throws IOException {
+        this.recordPath = Paths.get(base + ".books");
+        this.indexPath = Paths.get(base + ".idx");
+        this.records = FileChannel.open(recordPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (Files.exists(indexPath) && Files.size(indexPath) >= INDEX_HEADER) {
+            index = map(indexPath, Files.size(indexPath));
+            if (index.getInt(0) != INDEX_MAGIC) {
+                throw new IOException("Not a book store index, or one from an older version: " + indexPath);
+            }
+            slots = index.getInt(4);
+            size = index.getInt(8);
+            used = index.getInt(12);
+        } else {
+            slots = MIN_SLOTS;
+            index = createIndex(indexPath, slots);
+        }
+    }
+
+    // Opens or creates the store files next to base (base.books and base.idx)
+    public static MappedBookStore open(String base) throws IOException {
+        return new MappedBookStore(Paths.get(base));
+    }
+
+    // The record file
+    public Path getPath() {
+        return recordPath;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public boolean contains(String id) {
+        return get(id) != null;
+    }
+
+    // A new Book built from the stored record, or null if the ID is not in the store
+    public Book get(String id) {
+        MappedByteBuffer current;
+        int slotCount;
+        synchronized (this) {
+            current = index;
+            slotCount = slots;
+        }
+        try {
+            int hash = hash(id);
+            for (int probe = 0; probe < slotCount; probe++) {
+                int slot = (hash + probe) & (slotCount - 1);
+                long offset = current.getLong(slotOffset(slot));
+                if (offset == EMPTY) {
+                    return null;
+                }
+                if (offset != DELETED && current.getInt(slotOffset(slot) + 8) == hash) {
+                    Book book = readRecord(offset - 1);
+                    if (book.getId().equals(id)) {
+                        return book;
+                    }
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unreadable book store " + recordPath, e);
+        }
+    }
+
+    // Adds the book, or replaces the record stored under the same ID. The record is forced
+    // to disk before any slot points at it, so a crash can lose the change but never leave
+    // the index referring to a torn record.
+    public synchronized void put(Book book) throws IOException {
+        long offset = appendRecord(book);
+        records.force(false);
+        int hash = hash(book.getId());
+        int free = -1;
+        for (int probe = 0; probe < slots; probe++) {
+            int slot = (hash + probe) & (slots - 1);
+            long existing = index.getLong(slotOffset(slot));
+            if (existing == EMPTY) {
+                if (free < 0) {
+                    free = slot;
+                    used++;
+                }
+                break;
+            }
+            if (existing == DELETED) {
+                if (free < 0) {
+                    free = slot;
+                }
+                continue;
+            }
+            if (index.getInt(slotOffset(slot) + 8) == hash && readRecord(existing - 1).getId().equals(book.getId())) {
+                index.putLong(slotOffset(slot), offset + 1);
+                return;
+            }
+        }
+        // Hash first: get() probes without the lock and takes a slot as used once its offset is set
+        index.putInt(slotOffset(free) + 8, hash);
+        index.putLong(slotOffset(free), offset + 1);
+        size++;
+        writeCounts();
+        if (used * 2 > slots) {
+            resize(slots * 2);
+        }
+    }
+
+    // Returns false if the ID was not in the store
+    public synchronized boolean remove(String id) throws IOException {
+        int hash = hash(id);
+        for (int probe = 0; probe < slots; probe++) {
+            int slot = (hash + probe) & (slots - 1);
+            long offset = index.getLong(slotOffset(slot));
+            if (offset == EMPTY) {
+                return false;
+            }
+            if (offset != DELETED && index.getInt(slotOffset(slot) + 8) == hash
+                    && readRecord(offset - 1).getId().equals(id)) {
+                index.putLong(slotOffset(slot), DELETED);
+                size--;
+                writeCounts();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Flushes records and index to disk
+    public synchronized void force() throws IOException {
+        records.force(false);
+        index.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        records.close();
+    }
+
+    private long appendRecord(Book book) throws IOException {
+        byte[][] strings = {
+                utf8(book.getId()), utf8(book.getTitle()), utf8(book.getAuthor()),
+                utf8(book.getGenre()), utf8(book.getIsbn()), utf8(book.getPublisher())
+        };
+        int length = 12;
+        for (byte[] value : strings) {
+            length += 4 + (value != null ? value.length : 0);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+        buffer.putInt(length);
+        buffer.putInt(book.getPublicationYear());
+        buffer.putInt(book.getTotalCopies());
+        buffer.putInt(book.getAvailableCopies());
+        for (byte[] value : strings) {
+            buffer.putInt(value != null ? value.length : -1);
+            if (value != null) {
+                buffer.put(value);
+            }
+        }
+        buffer.flip();
+        long offset = records.size();
+        while (buffer.hasRemaining()) {
+            records.write(buffer, offset + buffer.position());
+        }
+        return offset;
+    }
+
+    private Book readRecord(long offset) throws IOException {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        readFully(lengthBuffer, offset);
+        ByteBuffer buffer = ByteBuffer.allocate(lengthBuffer.getInt(0));
+        readFully(buffer, offset + 4);
+        buffer.flip();
+        int year = buffer.getInt();
+        int totalCopies = buffer.getInt();
+        int availableCopies = buffer.getInt();
+        String id = readString(buffer);
+        String title = readString(buffer);
+        String author = readString(buffer);
+        String genre = readString(buffer);
+        String isbn = readString(buffer);
+        String publisher = readString(buffer);
+        Book book = new Book(id, title, author, genre, isbn, year, publisher, totalCopies);
+        book.setAvailableCopies(availableCopies);
+        return book;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (records.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated record at " + position);
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    // Rehashes the live slots into a fresh index file, then swaps it in
+    private void resize(int newSlots) throws IOException {
+        Path temp = Paths.get(indexPath + ".tmp");
+        MappedByteBuffer grown = createIndex(temp, newSlots);
+        for (int slot = 0; slot < slots; slot++) {
+            long offset = index.getLong(slotOffset(slot));
+            if (offset == EMPTY || offset == DELETED) {
+                continue;
+            }
+            int hash = index.getInt(slotOffset(slot) + 8);
+            int target = hash & (newSlots - 1);
+            while (grown.getLong(slotOffset(target)) != EMPTY) {
+                target = (target + 1) & (newSlots - 1);
+            }
+            grown.putLong(slotOffset(target), offset);
+            grown.putInt(slotOffset(target) + 8, hash);
+        }
+        grown.putInt(8, size);
+        grown.putInt(12, size);
+        grown.force();
+        Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        DirectorySync.forceParent(indexPath);
+        index = grown;
+        slots = newSlots;
+        used = size;
+    }
+
+    private void writeCounts() {
+        index.putInt(8, size);
+        index.putInt(12, used);
+    }
+
+    private static MappedByteBuffer createIndex(Path path, int slotCount) throws IOException {
+        Files.deleteIfExists(path);
+        MappedByteBuffer created = map(path, INDEX_HEADER + (long) slotCount * SLOT_SIZE);
+        created.putInt(0, INDEX_MAGIC);
+        created.putInt(4, slotCount);
+        return created;
+    }
+
+    private static MappedByteBuffer map(Path path, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+    }
+
+    private static int slotOffset(int slot) {
+        return INDEX_HEADER + slot * SLOT_SIZE;
+    }
+
+    private static int hash(String id) {
+        int h = id.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
\ No newline at end of file
@@ -1,5 +1,7 @@
 import java.util.ArrayList;
 import java.util.List;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 public class Member implements Serializable {
@@ -40,24 +42,48 @@ public class Member implements Serializable {
         return borrowedBooks;
     }
 
-    // Method to borrow a book
-    public void borrowBook(Book book) {
-        if (book.isAvailable()) {
+    // borrowedBooks is not serialized; start empty so a loaded member can borrow again
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        borrowedBooks = new ArrayList<>();
+    }
+
+    // Method to borrow a book; false if no copy was left
+    public boolean borrowBook(Book book) {
+        if (book.tryAcquireCopy()) {
             borrowedBooks.add(book);
-            book.setAvailable(false);
+            book.addBorrower(this);
+            return true;
         }
+        return false;
     }
 
     // Method to return a book
     public boolean returnBook(Book book) {
-        if (borrowedBooks.contains(book)) {
-            borrowedBooks.remove(book);
-            book.setAvailable(true);
+        if (borrowedBooks.remove(book)) {
+            book.removeBorrower(this);
+            book.releaseCopy();
             return true;
         }
         return false;
     }
 
+    // The book on loan with this ID, even if it has since left the catalog; null if none
+    Book findBorrowedBook(String bookId) {
+        for (Book book : borrowedBooks) {
+            if (book.getId().equals(bookId)) {
+                return book;
+            }
+        }
+        return null;
+    }
+
+    // Records a loan read back from a saved library; its copy is already counted out
+    void restoreLoan(Book book) {
+        borrowedBooks.add(book);
+        book.addBorrower(this);
+    }
+
     @Override
     public String toString() {
         return "Member{" +
@@ -0,0 +1,27 @@
+import java.util.List;
+
+// One page of a keyset-paginated query. Pass getNextCursor() back to fetch the following page.
+public class Page<T> {
+    public static final int FIRST = 0;
+
+    private final List<T> items;
+    private final int nextCursor;
+
+    Page(List<T> items, int nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    // Cursor for the next page, or -1 when this is the last page
+    public int getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor >= 0;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,86 @@
+import java.util.Arrays;
+
+// Growable, sorted array of book ordinals used by the catalog indexes
+class PostingList {
+    private int[] ordinals;
+    private int size;
+
+    PostingList() {
+        this.ordinals = new int[4];
+        this.size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int get(int index) {
+        return ordinals[index];
+    }
+
+    boolean contains(int ordinal) {
+        return Arrays.binarySearch(ordinals, 0, size, ordinal) >= 0;
+    }
+
+    void add(int ordinal) {
+        // Ordinals are handed out in increasing order, so appending is the common case
+        if (size == 0 || ordinals[size - 1] < ordinal) {
+            ensureCapacity(size + 1);
+            ordinals[size++] = ordinal;
+            return;
+        }
+        int pos = Arrays.binarySearch(ordinals, 0, size, ordinal);
+        if (pos >= 0) {
+            return;
+        }
+        pos = -pos - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(ordinals, pos, ordinals, pos + 1, size - pos);
+        ordinals[pos] = ordinal;
+        size++;
+    }
+
+    boolean remove(int ordinal) {
+        int pos = Arrays.binarySearch(ordinals, 0, size, ordinal);
+        if (pos < 0) {
+            return false;
+        }
+        System.arraycopy(ordinals, pos + 1, ordinals, pos, size - pos - 1);
+        size--;
+        return true;
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(ordinals, size);
+    }
+
+    // Intersect a sorted candidate array with this list, returning the common ordinals
+    int[] retainAll(int[] candidates, int candidateCount) {
+        int[] result = new int[Math.min(candidateCount, size)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < candidateCount && j < size) {
+            if (candidates[i] == ordinals[j]) {
+                result[count++] = candidates[i];
+                i++;
+                j++;
+            } else if (candidates[i] < ordinals[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ordinals.length) {
+            ordinals = Arrays.copyOf(ordinals, Math.max(capacity, ordinals.length * 2));
+        }
+    }
+}
\ No newline at end of file
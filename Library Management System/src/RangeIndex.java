@@ -0,0 +1,54 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Ordered index from an int field (publication year) to book ordinals, for range queries
+class RangeIndex {
+    private final NavigableMap<Integer, PostingList> entries; // Concurrent, so optimistic queries can walk it while a writer updates it
+
+    RangeIndex() {
+        this.entries = new ConcurrentSkipListMap<>();
+    }
+
+    void add(int ordinal, int key) {
+        entries.computeIfAbsent(key, k -> new PostingList()).add(ordinal);
+    }
+
+    void remove(int ordinal, int key) {
+        PostingList list = entries.get(key);
+        if (list != null && list.remove(ordinal) && list.isEmpty()) {
+            entries.remove(key);
+        }
+    }
+
+    // Number of ordinals with from <= key <= to, without materializing them
+    int count(int from, int to) {
+        int count = 0;
+        for (PostingList list : range(from, to)) {
+            count += list.size();
+        }
+        return count;
+    }
+
+    // Sorted ordinals with from <= key <= to
+    int[] get(int from, int to) {
+        int[] result = new int[count(from, to)];
+        int pos = 0;
+        for (PostingList list : range(from, to)) {
+            for (int i = 0; i < list.size(); i++) {
+                result[pos++] = list.get(i);
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private Collection<PostingList> range(int from, int to) {
+        if (from > to) {
+            return new TreeMap<Integer, PostingList>().values();
+        }
+        return entries.subMap(from, true, to, true).values();
+    }
+}
\ No newline at end of file
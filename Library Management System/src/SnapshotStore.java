@@ -0,0 +1,154 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Numbered snapshot generations kept next to a base file: <base>.000001, <base>.000002, ...
+// Each file holds a header (magic, the last log LSN it covers), the encoded library and
+// a CRC32 trailer over everything before it, so a torn or corrupted generation is
+// recognized and skipped in favor of the one before it.
+class SnapshotStore {
+    private static final int MAGIC = 0x4C4D5353; // "LMSS"
+    private static final int HEADER_SIZE = 12;
+    private static final int TRAILER_SIZE = 8;
+
+    private final Path base;
+    private final int retained;
+
+    SnapshotStore(Path base, int retained) {
+        this.base = base;
+        this.retained = retained;
+    }
+
+    Path getBase() {
+        return base;
+    }
+
+    // Writes the next generation (temp file, fsync, atomic rename) and then deletes
+    // generations beyond the retained count. Returns the new file.
+    Path write(LibraryCodec.Contents image, long lsn) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.writeLong(lsn);
+        header.flush();
+        LibraryCodec.encode(image, bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray(), 0, bytes.size());
+        new DataOutputStream(bytes).writeLong(crc.getValue());
+
+        List<Path> generations = list(base);
+        long next = generations.isEmpty() ? 1 : generationOf(base, generations.get(generations.size() - 1)) + 1;
+        Path target = base.resolveSibling(base.getFileName() + "." + String.format("%06d", next));
+        Path temp = base.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        DirectorySync.forceParent(target);
+
+        generations.add(target);
+        for (int i = 0; i < generations.size() - retained; i++) {
+            Files.deleteIfExists(generations.get(i));
+        }
+        return target;
+    }
+
+    // Lowest LSN among the retained generations; log records above it must be kept so
+    // any of them can still be recovered. 0 if there are none.
+    long oldestRetainedLsn() throws IOException {
+        long oldest = Long.MAX_VALUE;
+        for (Path generation : list(base)) {
+            byte[] header = new byte[HEADER_SIZE];
+            try (InputStream in = Files.newInputStream(generation)) {
+                if (in.read(header) == HEADER_SIZE && ByteBuffer.wrap(header).getInt() == MAGIC) {
+                    oldest = Math.min(oldest, ByteBuffer.wrap(header).getLong(4));
+                }
+            }
+        }
+        return oldest == Long.MAX_VALUE ? 0 : oldest;
+    }
+
+    // Newest generation that passes its checksum and deserializes, or null if none does.
+    // Generations that fail are reported to the listener and skipped.
+    static Library loadNewest(Path base, LibraryListener listener) {
+        List<Path> generations;
+        try {
+            generations = list(base);
+        } catch (IOException e) {
+            if (listener != null) {
+                listener.loadFailed(base.toString(), e);
+            }
+            return null;
+        }
+
+        for (int i = generations.size() - 1; i >= 0; i--) {
+            Path generation = generations.get(i);
+            try {
+                Library library = read(generation);
+                if (listener != null) {
+                    listener.loaded(generation.toString());
+                }
+                return library;
+            } catch (IOException | ClassNotFoundException e) {
+                if (listener != null) {
+                    listener.loadFailed(generation.toString(), e);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Library read(Path generation) throws IOException, ClassNotFoundException {
+        byte[] bytes = Files.readAllBytes(generation);
+        if (bytes.length < HEADER_SIZE + TRAILER_SIZE || ByteBuffer.wrap(bytes).getInt() != MAGIC) {
+            throw new IOException("Not a library snapshot");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - TRAILER_SIZE);
+        if (crc.getValue() != ByteBuffer.wrap(bytes).getLong(bytes.length - TRAILER_SIZE)) {
+            throw new IOException("Snapshot checksum mismatch");
+        }
+        return Library.read(new ByteArrayInputStream(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE - TRAILER_SIZE));
+    }
+
+    // Generation files in ascending order
+    private static List<Path> list(Path base) throws IOException {
+        List<Path> generations = new ArrayList<>();
+        Path directory = base.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, base.getFileName() + ".*")) {
+            for (Path entry : entries) {
+                if (generationOf(base, entry) > 0) {
+                    generations.add(entry);
+                }
+            }
+        }
+        generations.sort(Comparator.comparingLong(path -> generationOf(base, path)));
+        return generations;
+    }
+
+    private static long generationOf(Path base, Path file) {
+        String suffix = file.getFileName().toString().substring(base.getFileName().toString().length() + 1);
+        if (suffix.isEmpty() || suffix.length() > 18 || !suffix.chars().allMatch(Character::isDigit)) {
+            return -1;
+        }
+        return Long.parseLong(suffix);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,97 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Takes snapshots on its own thread, triggered after a number of changes and/or on a
+// timer, so writing a snapshot never runs on a circulation or UI thread.
+class Snapshotter {
+    private final Library library;
+    private final SnapshotStore store;
+    private final int changeThreshold;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean queued = new AtomicBoolean();
+
+    // Change count covered by the last successful snapshot; only written on the executor
+    private volatile long snapshotChanges;
+
+    Snapshotter(Library library, SnapshotStore store, int changeThreshold, long intervalMillis) {
+        this.library = library;
+        this.store = store;
+        this.changeThreshold = changeThreshold;
+        this.snapshotChanges = library.getChangeCount();
+        this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "library-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (intervalMillis > 0) {
+            executor.scheduleWithFixedDelay(() -> {
+                if (library.getChangeCount() != snapshotChanges) {
+                    snapshot();
+                }
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Called by the library after each change; queues at most one snapshot at a time
+    void changed(long changeCount) {
+        if (changeThreshold > 0 && changeCount - snapshotChanges >= changeThreshold) {
+            requestSnapshot();
+        }
+    }
+
+    // Queues a snapshot unless one is already queued, without waiting for it
+    void requestSnapshot() {
+        if (queued.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                queued.set(false);
+                snapshot();
+            });
+        }
+    }
+
+    // Takes a snapshot now and waits for it; false if it failed
+    boolean snapshotNow() {
+        Future<Boolean> result = executor.submit(this::snapshot);
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            library.snapshotFailed(store, e);
+            return false;
+        }
+    }
+
+    void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Skipped, successfully, when nothing changed since the last save. Never throws: an
+    // exception escaping the timer task would cancel it for good.
+    private boolean snapshot() {
+        try {
+            if (!library.hasUnsavedChanges()) {
+                return true;
+            }
+            long changes = library.writeGeneration(store);
+            if (changes < 0) {
+                return false;
+            }
+            snapshotChanges = changes;
+            return true;
+        } catch (RuntimeException e) {
+            library.snapshotFailed(store, e);
+            return false;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Process-wide interning table for the low-cardinality book fields (author, genre,
+// publisher). Each distinct value is stored once and gets a small int code, so books keep
+// 4-byte codes and equal values compare as ints. Codes are never reused; 0 stands for null.
+final class StringDictionary {
+    static final StringDictionary SHARED = new StringDictionary();
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    // Indexed by code; only grown under the lock, and a code is published through codes
+    // after its slot is filled
+    private volatile String[] values = new String[256];
+    private volatile int[] foldedCodes = new int[256];
+    private int size = 1;
+
+    private StringDictionary() {
+    }
+
+    // Code for value, adding it on first use
+    int code(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            if (size == values.length) {
+                foldedCodes = Arrays.copyOf(foldedCodes, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size] = value;
+            codes.put(value, size);
+            return size++;
+        }
+    }
+
+    // Code for value without adding it; -1 if it was never added
+    int find(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : -1;
+    }
+
+    String value(int code) {
+        return code == 0 ? null : values[code];
+    }
+
+    // Code of the trimmed, lower-cased form of a value, for case-insensitive matching
+    int folded(int code) {
+        if (code == 0) {
+            return 0;
+        }
+        int[] cache = foldedCodes;
+        int folded = code < cache.length ? cache[code] : 0;
+        if (folded == 0) {
+            // Racing threads compute the same code, so an unsynchronized memo is fine
+            folded = code(fold(value(code)));
+            cache[code] = folded;
+        }
+        return folded;
+    }
+
+    static String fold(String value) {
+        return value.trim().toLowerCase();
+    }
+}
\ No newline at end of file
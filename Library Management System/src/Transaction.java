@@ -14,10 +14,15 @@ public class Transaction implements Serializable {
     private LocalDateTime timestamp;
 
     public Transaction(Book book, Member member, Type type) {
+        this(book, member, type, LocalDateTime.now());
+    }
+
+    // For transactions replayed from a log, which keep their original time
+    public Transaction(Book book, Member member, Type type, LocalDateTime timestamp) {
         this.book = book;
         this.member = member;
         this.type = type;
-        this.timestamp = LocalDateTime.now();
+        this.timestamp = timestamp;
     }
 
     public Book getBook() {
@@ -0,0 +1,505 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Function;
+
+// Circulation history in time order. The newest transactions are resident; older ones are
+// sealed into immutable segment files of SEGMENT_SIZE transactions each and read back only
+// when a query reaches them, with the last few kept in a small cache. Positions are stable
+// across sealing, so they double as page cursors.
+//
+// Transactions are not kept as objects: resident and cached runs are stored column-wise
+// (see Columns) and a Transaction is built only when one is read.
+//
+// Without a directory nothing is sealed and the whole history stays resident.
+class TransactionHistory {
+    static final int SEGMENT_SIZE = 4096;
+    private static final int CACHED_SEGMENTS = 4;
+
+    // A sealed segment file and what it covers; written into snapshots in place of its
+    // transactions
+    static class Segment {
+        final String file;
+        final int first;
+        final int count;
+        final int checkouts;
+        final LocalDateTime oldest;
+        final LocalDateTime newest;
+
+        Segment(String file, int first, int count, int checkouts, LocalDateTime oldest, LocalDateTime newest) {
+            this.file = file;
+            this.first = first;
+            this.count = count;
+            this.checkouts = checkouts;
+            this.oldest = oldest;
+            this.newest = newest;
+        }
+    }
+
+    private final List<Segment> segments;
+    private Columns recent;
+    private final Function<String, Book> books;
+    private final Function<String, Member> members;
+    private final Map<Segment, Columns> cache = new LinkedHashMap<Segment, Columns>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Segment, Columns> eldest) {
+            return size() > CACHED_SEGMENTS;
+        }
+    };
+    private final Object sealing = new Object();
+    private Path directory;
+    private int sealedCount;
+    private int checkouts;
+
+    // Transactions read back from segments refer to the current catalog entries with the
+    // same IDs, found through books and members, or to stored copies if they were removed
+    TransactionHistory(List<Segment> segments, List<Transaction> recent,
+                       Function<String, Book> books, Function<String, Member> members) {
+        this.segments = new ArrayList<>(segments);
+        this.recent = new Columns(Math.max(recent.size(), 16));
+        this.books = books;
+        this.members = members;
+        for (Segment segment : segments) {
+            sealedCount += segment.count;
+            checkouts += segment.checkouts;
+        }
+        appendAll(recent);
+    }
+
+    // Sets where segments are written and read; ignored once a directory is set
+    synchronized void attach(Path directory) {
+        if (this.directory == null) {
+            this.directory = directory;
+        }
+    }
+
+    synchronized void append(Transaction transaction) {
+        recent.add(transaction.getBook(), transaction.getMember(), transaction.getType(),
+                LibraryCodec.epochNanos(transaction.getTimestamp()));
+        if (transaction.getType() == Transaction.Type.CHECKOUT) {
+            checkouts++;
+        }
+    }
+
+    synchronized void appendAll(List<Transaction> batch) {
+        for (Transaction transaction : batch) {
+            append(transaction);
+        }
+    }
+
+    // Appends transactions read from a file whose books and members are separate copies,
+    // pointing them at the current catalog entries with the same IDs
+    synchronized void appendStored(List<Transaction> stored) {
+        for (Transaction transaction : stored) {
+            recent.add(resolve(transaction.getBook()), resolve(transaction.getMember()), transaction.getType(),
+                    LibraryCodec.epochNanos(transaction.getTimestamp()));
+            if (transaction.getType() == Transaction.Type.CHECKOUT) {
+                checkouts++;
+            }
+        }
+    }
+
+    // Transactions in the segment file format: the compact library format with empty
+    // catalogs, so books and members are referenced by table index and written once each
+    static byte[] encode(List<Transaction> transactions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LibraryCodec.encode(new LibraryCodec.Contents(Collections.emptyList(), Collections.emptyList(),
+                transactions, new HashMap<>(), 0), bytes);
+        return bytes.toByteArray();
+    }
+
+    synchronized int size() {
+        return sealedCount + recent.size;
+    }
+
+    synchronized int count(Transaction.Type type) {
+        return type == Transaction.Type.CHECKOUT ? checkouts : size() - checkouts;
+    }
+
+    synchronized List<Segment> getSegments() {
+        return new ArrayList<>(segments);
+    }
+
+    Transaction get(int position) {
+        return range(position, position + 1).get(0);
+    }
+
+    // Transactions at positions [from, to), loading sealed segments as needed. Segment files
+    // are read without holding the lock, so appends are never stuck behind disk reads.
+    List<Transaction> range(int from, int to) {
+        List<Transaction> result = new ArrayList<>(Math.max(to - from, 0));
+        int position = from;
+        while (position < to) {
+            Segment segment;
+            synchronized (this) {
+                if (position >= sealedCount) {
+                    for (int row = position - sealedCount; row < to - sealedCount; row++) {
+                        result.add(recent.get(row));
+                    }
+                    return result;
+                }
+                segment = segmentAt(position);
+            }
+            Columns loaded = columnsOf(segment);
+            int end = Math.min(to - segment.first, segment.count);
+            for (int row = position - segment.first; row < end; row++) {
+                result.add(loaded.get(row));
+            }
+            position = segment.first + end;
+        }
+        return result;
+    }
+
+    // Read-only list over positions [0, size) as of now, building each Transaction on access
+    List<Transaction> view() {
+        int size = size();
+        return new TransactionView(size);
+    }
+
+    private class TransactionView extends AbstractList<Transaction> implements RandomAccess {
+        private final int size;
+
+        TransactionView(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public Transaction get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+            }
+            return TransactionHistory.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    // Positions, in order, of the transactions of the given type (null for any) whose book
+    // title, member name, type or timestamp contains text, ignoring case. Each run's book
+    // and member tables are matched once; rows are then checked on their columns, and a
+    // timestamp is only formatted when text could be part of one.
+    int[] find(Transaction.Type type, String text) {
+        String needle = text.toLowerCase(Locale.ROOT);
+        Matches matches = new Matches();
+        int position = 0;
+        while (true) {
+            Segment segment;
+            synchronized (this) {
+                if (position >= sealedCount) {
+                    matches.scan(recent, position - sealedCount, sealedCount, type, needle);
+                    return matches.toArray();
+                }
+                segment = segmentAt(position);
+            }
+            matches.scan(columnsOf(segment), position - segment.first, segment.first, type, needle);
+            position = segment.first + segment.count;
+        }
+    }
+
+    private static class Matches {
+        private int[] positions = new int[16];
+        private int size;
+
+        void scan(Columns run, int fromRow, int base, Transaction.Type type, String needle) {
+            byte typeCode = type == null ? -1 : type == Transaction.Type.CHECKOUT ? CHECKOUT : RETURN;
+            boolean[] books = new boolean[run.bookTable.size()];
+            for (int i = 0; i < books.length; i++) {
+                books[i] = contains(run.bookTable.get(i).getTitle(), needle);
+            }
+            boolean[] members = new boolean[run.memberTable.size()];
+            for (int i = 0; i < members.length; i++) {
+                members[i] = contains(run.memberTable.get(i).getName(), needle);
+            }
+            boolean checkoutMatches = contains(Transaction.Type.CHECKOUT.toString(), needle);
+            boolean returnMatches = contains(Transaction.Type.RETURN.toString(), needle);
+            boolean timeMatches = couldBeTime(needle);
+            for (int row = fromRow; row < run.size; row++) {
+                if (typeCode >= 0 && run.typeColumn[row] != typeCode) {
+                    continue;
+                }
+                if (books[run.bookColumn[row]] || members[run.memberColumn[row]]
+                        || (run.typeColumn[row] == CHECKOUT ? checkoutMatches : returnMatches)
+                        || (timeMatches && contains(LibraryCodec.dateTime(run.timeColumn[row]).toString(), needle))) {
+                    if (size == positions.length) {
+                        positions = Arrays.copyOf(positions, size * 2);
+                    }
+                    positions[size++] = base + row;
+                }
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+
+        private static boolean contains(String value, String needle) {
+            return value != null && value.toLowerCase(Locale.ROOT).contains(needle);
+        }
+
+        // Timestamps print as ISO-8601 (2024-05-01T10:15:30.123)
+        private static boolean couldBeTime(String needle) {
+            for (int i = 0; i < needle.length(); i++) {
+                if ("0123456789-:t.".indexOf(needle.charAt(i)) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Position of the first transaction at or after time; segments that end earlier are
+    // skipped without being read, and rows are compared on their timestamp column
+    int positionAt(LocalDateTime time) {
+        long nanos;
+        try {
+            nanos = LibraryCodec.epochNanos(time);
+        } catch (ArithmeticException e) {
+            // Outside the range any stored timestamp can have, so before or after all of them
+            nanos = time.getYear() < 1970 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        for (Segment segment : getSegments()) {
+            if (!segment.newest.isBefore(time)) {
+                Columns loaded = columnsOf(segment);
+                for (int row = 0; row < loaded.size; row++) {
+                    if (loaded.timeColumn[row] >= nanos) {
+                        return segment.first + row;
+                    }
+                }
+            }
+        }
+        synchronized (this) {
+            for (int row = 0; row < recent.size; row++) {
+                if (recent.timeColumn[row] >= nanos) {
+                    return sealedCount + row;
+                }
+            }
+            return size();
+        }
+    }
+
+    // Moves the oldest resident transactions into segment files, one full segment at a time,
+    // while keeping at least a segment's worth resident for recent queries
+    void seal() throws IOException {
+        synchronized (sealing) {
+            while (true) {
+                Columns chunk;
+                int first;
+                Path target;
+                synchronized (this) {
+                    if (directory == null || recent.size < 2 * SEGMENT_SIZE) {
+                        return;
+                    }
+                    chunk = recent.copy(0, SEGMENT_SIZE);
+                    first = sealedCount;
+                    target = directory;
+                }
+                Segment segment = write(target, first, chunk);
+                synchronized (this) {
+                    segments.add(segment);
+                    sealedCount += chunk.size;
+                    // Copying also drops references only the sealed rows used
+                    recent = recent.copy(chunk.size, recent.size);
+                    cache.put(segment, chunk);
+                }
+            }
+        }
+    }
+
+    // Segment files hold the transactions in the compact library format, with the books and
+    // members they refer to; written to a temporary file, fsynced and renamed into place
+    private static Segment write(Path directory, int first, Columns chunk) throws IOException {
+        List<Transaction> transactions = new ArrayList<>(chunk.size);
+        for (int row = 0; row < chunk.size; row++) {
+            transactions.add(chunk.get(row));
+        }
+        byte[] encoded = encode(transactions);
+
+        Files.createDirectories(directory);
+        String name = String.format("%012d.seg", first);
+        Path temp = directory.resolve(name + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(encoded);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Snapshots list the segment by name, so it must survive a crash before they do
+        DirectorySync.forceParent(directory.resolve(name));
+
+        int checkouts = 0;
+        long oldest = Long.MAX_VALUE;
+        long newest = Long.MIN_VALUE;
+        for (int row = 0; row < chunk.size; row++) {
+            if (chunk.typeColumn[row] == CHECKOUT) {
+                checkouts++;
+            }
+            oldest = Math.min(oldest, chunk.timeColumn[row]);
+            newest = Math.max(newest, chunk.timeColumn[row]);
+        }
+        return new Segment(name, first, chunk.size, checkouts,
+                LibraryCodec.dateTime(oldest), LibraryCodec.dateTime(newest));
+    }
+
+    // Cached columns are never appended to, so callers read them without the lock
+    private Columns columnsOf(Segment segment) {
+        Columns loaded;
+        synchronized (this) {
+            loaded = cache.get(segment);
+        }
+        if (loaded == null) {
+            loaded = load(segment);
+            synchronized (this) {
+                cache.put(segment, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    private Columns load(Segment segment) {
+        Path directory;
+        synchronized (this) {
+            directory = this.directory;
+        }
+        if (directory == null) {
+            throw new IllegalStateException("No history directory for segment " + segment.file);
+        }
+        LibraryCodec.Contents contents;
+        try (InputStream in = Files.newInputStream(directory.resolve(segment.file))) {
+            contents = LibraryCodec.decode(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unreadable history segment " + segment.file, e);
+        }
+        if (contents.transactions.size() != segment.count) {
+            throw new UncheckedIOException(new IOException("History segment " + segment.file + " has "
+                    + contents.transactions.size() + " transactions, expected " + segment.count));
+        }
+
+        Columns loaded = new Columns(segment.count);
+        for (Transaction stored : contents.transactions) {
+            loaded.add(resolve(stored.getBook()), resolve(stored.getMember()), stored.getType(),
+                    LibraryCodec.epochNanos(stored.getTimestamp()));
+        }
+        return loaded;
+    }
+
+    // The catalog entry with the stored copy's ID, or the copy if it was removed
+    private Book resolve(Book stored) {
+        Book current = books.apply(stored.getId());
+        return current != null ? current : stored;
+    }
+
+    private Member resolve(Member stored) {
+        Member current = members.apply(stored.getId());
+        return current != null ? current : stored;
+    }
+
+    // Caller holds the lock and position is below sealedCount
+    private Segment segmentAt(int position) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segments.get(mid).first <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return segments.get(low);
+    }
+
+    private static final byte CHECKOUT = 0;
+    private static final byte RETURN = 1;
+
+    // Struct-of-arrays storage for a run of transactions: per row an int book reference, an
+    // int member reference, a type byte and epoch nanoseconds, about 17 bytes instead of a
+    // Transaction and its LocalDateTime. Each distinct Book and Member is referenced once
+    // from a table. Callers synchronize; runs in the segment cache are never modified.
+    private static class Columns {
+        private final List<Book> bookTable = new ArrayList<>();
+        private final Map<Book, Integer> bookRefs = new IdentityHashMap<>();
+        private final List<Member> memberTable = new ArrayList<>();
+        private final Map<Member, Integer> memberRefs = new IdentityHashMap<>();
+        private int[] bookColumn;
+        private int[] memberColumn;
+        private byte[] typeColumn;
+        private long[] timeColumn;
+        private int size;
+
+        Columns(int capacity) {
+            bookColumn = new int[capacity];
+            memberColumn = new int[capacity];
+            typeColumn = new byte[capacity];
+            timeColumn = new long[capacity];
+        }
+
+        void add(Book book, Member member, Transaction.Type type, long epochNanos) {
+            if (size == bookColumn.length) {
+                int capacity = Math.max(16, size * 2);
+                bookColumn = Arrays.copyOf(bookColumn, capacity);
+                memberColumn = Arrays.copyOf(memberColumn, capacity);
+                typeColumn = Arrays.copyOf(typeColumn, capacity);
+                timeColumn = Arrays.copyOf(timeColumn, capacity);
+            }
+            Integer bookRef = bookRefs.get(book);
+            if (bookRef == null) {
+                bookRef = bookTable.size();
+                bookTable.add(book);
+                bookRefs.put(book, bookRef);
+            }
+            Integer memberRef = memberRefs.get(member);
+            if (memberRef == null) {
+                memberRef = memberTable.size();
+                memberTable.add(member);
+                memberRefs.put(member, memberRef);
+            }
+            bookColumn[size] = bookRef;
+            memberColumn[size] = memberRef;
+            typeColumn[size] = type == Transaction.Type.CHECKOUT ? CHECKOUT : RETURN;
+            timeColumn[size] = epochNanos;
+            size++;
+        }
+
+        Transaction get(int row) {
+            return new Transaction(bookTable.get(bookColumn[row]), memberTable.get(memberColumn[row]),
+                    typeColumn[row] == CHECKOUT ? Transaction.Type.CHECKOUT : Transaction.Type.RETURN,
+                    LibraryCodec.dateTime(timeColumn[row]));
+        }
+
+        // Rows [from, to) as a new run with its own reference tables
+        Columns copy(int from, int to) {
+            Columns copy = new Columns(Math.max(to - from, 16));
+            for (int row = from; row < to; row++) {
+                copy.add(bookTable.get(bookColumn[row]), memberTable.get(memberColumn[row]),
+                        typeColumn[row] == CHECKOUT ? Transaction.Type.CHECKOUT : Transaction.Type.RETURN,
+                        timeColumn[row]);
+            }
+            return copy;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Inverted index from lowercase character trigrams to book ordinals.
+// A "contains" query only has to verify the books that share all of its trigrams.
+class TrigramIndex {
+    private final Map<Long, PostingList> postings; // Concurrent, so optimistic queries can walk it while a writer updates it
+    private final List<String> texts; // Lowercase text per ordinal, null when removed
+
+    TrigramIndex() {
+        this.postings = new ConcurrentHashMap<>();
+        this.texts = new ArrayList<>();
+    }
+
+    void add(int ordinal, String text) {
+        String normalized = text == null ? "" : text.toLowerCase();
+        while (texts.size() <= ordinal) {
+            texts.add(null);
+        }
+        texts.set(ordinal, normalized);
+        
+        for (long trigram : trigrams(normalized)) {
+            postings.computeIfAbsent(trigram, k -> new PostingList()).add(ordinal);
+        }
+    }
+
+    void remove(int ordinal) {
+        if (ordinal >= texts.size() || texts.get(ordinal) == null) {
+            return;
+        }
+        for (long trigram : trigrams(texts.get(ordinal))) {
+            PostingList list = postings.get(trigram);
+            if (list != null) {
+                list.remove(ordinal);
+                if (list.isEmpty()) {
+                    postings.remove(trigram);
+                }
+            }
+        }
+        texts.set(ordinal, null);
+    }
+
+    // Returns the ordinals, in increasing order, whose text contains the query (case-insensitive)
+    int[] search(String query) {
+        return search(query, 0, Integer.MAX_VALUE);
+    }
+
+    // Same as search(query), but only the first `limit` matches at or after fromOrdinal
+    int[] search(String query, int fromOrdinal, int limit) {
+        String normalized = query.toLowerCase();
+        if (normalized.length() < 3) {
+            return scan(normalized, fromOrdinal, limit);
+        }
+        
+        List<PostingList> lists = new ArrayList<>();
+        for (long trigram : trigrams(normalized)) {
+            PostingList list = postings.get(trigram);
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        
+        // Intersect smallest-first so the candidate set shrinks as fast as possible
+        lists.sort(Comparator.comparingInt(PostingList::size));
+        int[] candidates = lists.get(0).toArray();
+        for (int i = 1; i < lists.size() && candidates.length > 0; i++) {
+            candidates = lists.get(i).retainAll(candidates, candidates.length);
+        }
+        
+        // Trigrams can match out of order, so confirm the real substring
+        int start = Arrays.binarySearch(candidates, fromOrdinal);
+        int count = 0;
+        for (int i = start >= 0 ? start : -start - 1; i < candidates.length && count < limit; i++) {
+            if (texts.get(candidates[i]).contains(normalized)) {
+                candidates[count++] = candidates[i];
+            }
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    // Queries shorter than a trigram fall back to the cached lowercase texts
+    private int[] scan(String normalized, int fromOrdinal, int limit) {
+        int[] result = new int[Math.max(0, Math.min(limit, texts.size() - fromOrdinal))];
+        int count = 0;
+        for (int ordinal = fromOrdinal; ordinal < texts.size() && count < limit; ordinal++) {
+            String text = texts.get(ordinal);
+            if (text != null && text.contains(normalized)) {
+                result[count++] = ordinal;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static Set<Long> trigrams(String text) {
+        Set<Long> result = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            long trigram = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+            result.add(trigram);
+        }
+        return result;
+    }
+}
\ No newline at end of file
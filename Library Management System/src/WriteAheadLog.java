@@ -0,0 +1,517 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Append-only log of catalog and circulation changes. Each record is framed as
+// [payload length][CRC32 of payload][payload] and the payload starts with its LSN, so a
+// torn tail from a crash is detected and ignored on replay. A bad record anywhere else
+// means durable records were damaged, and reading the log fails instead of skipping them. Appends only copy
+// the record into a buffer; a flusher thread writes and fsyncs whatever has accumulated,
+// so concurrent writers waiting in awaitDurable share one fsync (group commit).
+//
+// The log is split into segments named <log file>.<first LSN>, so records a snapshot
+// already covers can be dropped a whole file at a time. A plain <log file> with no
+// suffix is read as the first segment.
+class WriteAheadLog implements Closeable {
+    private static final byte ADD_BOOK = 1;
+    private static final byte REMOVE_BOOK = 2;
+    private static final byte ADD_MEMBER = 3;
+    private static final byte REMOVE_MEMBER = 4;
+    private static final byte CHECKOUT = 5;
+    private static final byte RETURN = 6;
+    private static final byte UPDATE_BOOK = 7;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    // Receives the records of a log in LSN order during replay
+    interface Handler {
+        void addBook(Book book);
+
+        void removeBook(String bookId);
+
+        // The editable fields of a book after a change (see Book's setters)
+        void updateBook(String bookId, String isbn, int publicationYear, String publisher, int totalCopies);
+
+        void addMember(Member member);
+
+        void removeMember(String memberId);
+
+        void circulate(Transaction.Type type, String memberId, String bookId, LocalDateTime timestamp);
+    }
+
+    private final Path path;
+    private final Object lock = new Object();
+    private final Thread flusher;
+
+    // Guarded by lock
+    private FileChannel channel;
+    private long segmentFirstLsn;
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long lastLsn;
+    private long durableLsn;
+    private IOException failure;
+    private boolean closed;
+
+    // Opens the log for appending after its last valid record, truncating a torn tail of the
+    // last segment. LSNs continue from whichever is higher: the log's last record or the
+    // snapshot's. Throws without changing any file if a record before the tail is corrupt.
+    static WriteAheadLog open(Path path, long snapshotLsn) throws IOException {
+        ReplayResult tail = scan(path, Long.MAX_VALUE, null);
+        return new WriteAheadLog(path, tail, Math.max(snapshotLsn, tail.lastLsn));
+    }
+
+    // Applies every valid record with an LSN above afterLsn and returns how many were
+    // applied. Throws on a corrupt record before the tail, after applying the ones before it.
+    static int replay(Path path, long afterLsn, Handler handler) throws IOException {
+        return scan(path, afterLsn, handler).applied;
+    }
+
+    private WriteAheadLog(Path path, ReplayResult tail, long lastLsn) throws IOException {
+        this.path = path;
+        if (tail.lastSegment != null) {
+            this.channel = FileChannel.open(tail.lastSegment, StandardOpenOption.WRITE);
+            this.segmentFirstLsn = tail.lastSegmentFirstLsn;
+            channel.truncate(tail.validLength);
+            channel.position(tail.validLength);
+        } else {
+            this.segmentFirstLsn = lastLsn + 1;
+            this.channel = FileChannel.open(segmentPath(path, segmentFirstLsn),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            DirectorySync.forceParent(path);
+        }
+        this.lastLsn = lastLsn;
+        this.durableLsn = lastLsn;
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long logAddBook(Book book) {
+        return append(ADD_BOOK, out -> {
+            writeString(out, book.getId());
+            writeString(out, book.getTitle());
+            writeString(out, book.getAuthor());
+            writeString(out, book.getGenre());
+            writeString(out, book.getIsbn());
+            out.writeInt(book.getPublicationYear());
+            writeString(out, book.getPublisher());
+            out.writeInt(book.getTotalCopies());
+            out.writeInt(book.getAvailableCopies());
+        });
+    }
+
+    long logRemoveBook(String bookId) {
+        return append(REMOVE_BOOK, out -> writeString(out, bookId));
+    }
+
+    long logUpdateBook(Book book) {
+        return append(UPDATE_BOOK, out -> {
+            writeString(out, book.getId());
+            writeString(out, book.getIsbn());
+            out.writeInt(book.getPublicationYear());
+            writeString(out, book.getPublisher());
+            out.writeInt(book.getTotalCopies());
+        });
+    }
+
+    long logAddMember(Member member) {
+        return append(ADD_MEMBER, out -> {
+            writeString(out, member.getId());
+            writeString(out, member.getName());
+            writeString(out, member.getEmail());
+            writeString(out, member.getPhoneNumber());
+        });
+    }
+
+    long logRemoveMember(String memberId) {
+        return append(REMOVE_MEMBER, out -> writeString(out, memberId));
+    }
+
+    long logCirculation(Transaction.Type type, String memberId, String bookId, LocalDateTime timestamp) {
+        return append(type == Transaction.Type.CHECKOUT ? CHECKOUT : RETURN, out -> {
+            writeString(out, memberId);
+            writeString(out, bookId);
+            out.writeLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(timestamp.getNano());
+        });
+    }
+
+    // LSN of the most recent append, durable or not
+    long getLastLsn() {
+        synchronized (lock) {
+            return lastLsn;
+        }
+    }
+
+    // The error that stopped the flusher, or null. Once set it stays set: nothing appended
+    // afterwards can become durable.
+    IOException getFailure() {
+        synchronized (lock) {
+            return failure;
+        }
+    }
+
+    // Blocks until every record up to lsn has been fsynced
+    void awaitDurable(long lsn) {
+        synchronized (lock) {
+            while (durableLsn < lsn && failure == null && !closed) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the log", e);
+                }
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Write-ahead log failed", failure);
+            }
+        }
+    }
+
+    // Starts a new segment so everything logged so far can later be dropped as whole
+    // files. Callers must make sure no appends are in flight. Does nothing if the
+    // current segment is still empty.
+    void rotate() throws IOException {
+        awaitDurable(getLastLsn());
+        synchronized (lock) {
+            if (lastLsn < segmentFirstLsn) {
+                return;
+            }
+            FileChannel next = FileChannel.open(segmentPath(path, lastLsn + 1),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                // Records fsynced into the new segment are only durable once its entry is
+                DirectorySync.forceParent(path);
+            } catch (IOException e) {
+                next.close();
+                throw e;
+            }
+            channel.close();
+            channel = next;
+            segmentFirstLsn = lastLsn + 1;
+        }
+    }
+
+    // Deletes the closed segments whose records all have LSNs at or below lsn, i.e. are
+    // covered by a snapshot that is safely on disk
+    void deleteThrough(long lsn) throws IOException {
+        List<Segment> segments = listSegments(path);
+        long currentFirstLsn;
+        synchronized (lock) {
+            currentFirstLsn = segmentFirstLsn;
+        }
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            long segmentLastLsn = segments.get(i + 1).firstLsn - 1;
+            if (segment.firstLsn < currentFirstLsn && segmentLastLsn <= lsn) {
+                Files.delete(segment.path);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            channel.close();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private long append(byte op, RecordWriter body) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(payload);
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+            long lsn = lastLsn + 1;
+            try {
+                out.writeLong(lsn);
+                out.writeByte(op);
+                body.write(out);
+                out.flush();
+            } catch (IOException e) {
+                // Writes to an in-memory stream cannot fail
+                throw new UncheckedIOException(e);
+            }
+            byte[] bytes = payload.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            writeInt(pending, bytes.length);
+            writeInt(pending, (int) crc.getValue());
+            pending.write(bytes, 0, bytes.length);
+            lastLsn = lsn;
+            lock.notifyAll();
+            return lsn;
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteArrayOutputStream batch;
+            long batchLsn;
+            FileChannel target;
+            synchronized (lock) {
+                while (pending.size() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = pending;
+                batchLsn = lastLsn;
+                target = channel;
+                pending = new ByteArrayOutputStream();
+            }
+
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                target.force(false);
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+
+            synchronized (lock) {
+                durableLsn = batchLsn;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static class Segment {
+        final long firstLsn;
+        final Path path;
+
+        Segment(long firstLsn, Path path) {
+            this.firstLsn = firstLsn;
+            this.path = path;
+        }
+    }
+
+    private static class ReplayResult {
+        long lastLsn;
+        int applied;
+        Path lastSegment;
+        long lastSegmentFirstLsn;
+        long validLength;
+    }
+
+    private static Path segmentPath(Path path, long firstLsn) {
+        return path.resolveSibling(path.getFileName() + "." + String.format("%020d", firstLsn));
+    }
+
+    // Segments in LSN order; the unsuffixed legacy file, if present, comes first
+    private static List<Segment> listSegments(Path path) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        if (Files.exists(path)) {
+            segments.add(new Segment(0, path));
+        }
+        Path directory = path.toAbsolutePath().getParent();
+        String prefix = path.getFileName() + ".";
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path entry : entries) {
+                String suffix = entry.getFileName().toString().substring(prefix.length());
+                if (suffix.length() == 20 && suffix.chars().allMatch(Character::isDigit)) {
+                    segments.add(new Segment(Long.parseLong(suffix), entry));
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(segment -> segment.firstLsn));
+        return segments;
+    }
+
+    // Reads the segments in order. Only the last segment may end in a torn write; a bad
+    // record in an earlier segment, or followed by more data, is corruption.
+    private static ReplayResult scan(Path path, long afterLsn, Handler handler) throws IOException {
+        ReplayResult result = new ReplayResult();
+        List<Segment> segments = listSegments(path);
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            result.lastSegment = segment.path;
+            result.lastSegmentFirstLsn = segment.firstLsn;
+            result.validLength = 0;
+            if (!scanSegment(segment.path, afterLsn, handler, result) && i + 1 < segments.size()) {
+                throw new IOException("Corrupt write-ahead log record in " + segment.path + " at byte "
+                        + result.validLength + ", before " + (segments.size() - i - 1) + " later segment(s)");
+            }
+        }
+        return result;
+    }
+
+    // Returns false if the segment ends in a torn record (at result.validLength)
+    private static boolean scanSegment(Path path, long afterLsn, Handler handler, ReplayResult result) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            byte[] payload = new byte[256];
+            while (true) {
+                int length;
+                int checksum;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                } catch (EOFException e) {
+                    return true;
+                }
+                if (length < 9 || length > MAX_RECORD_SIZE) {
+                    return tornTail(path, result.validLength, Long.MAX_VALUE);
+                }
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                try {
+                    in.readFully(payload, 0, length);
+                } catch (EOFException e) {
+                    return false;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    return tornTail(path, result.validLength, result.validLength + HEADER_SIZE + length);
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload, 0, length));
+                long lsn = record.readLong();
+                if (lsn > afterLsn && handler != null) {
+                    apply(record, handler);
+                    result.applied++;
+                }
+                result.lastLsn = lsn;
+                result.validLength += HEADER_SIZE + length;
+            }
+        }
+    }
+
+    // A crash can leave a partly written last record, possibly followed by zeros the file
+    // system allocated but never filled. Anything after the bad record other than that
+    // means the damage is in the middle of the log. Returns false for a torn tail.
+    private static boolean tornTail(Path path, long offset, long recordEnd) throws IOException {
+        long size = Files.size(path);
+        if (recordEnd >= size) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            long position = offset;
+            while (position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) != 0) {
+                        throw new IOException("Corrupt write-ahead log record in " + path + " at byte " + offset
+                                + ", followed by more data");
+                    }
+                }
+                position += read;
+            }
+        }
+        return false;
+    }
+
+    private static void apply(DataInputStream in, Handler handler) throws IOException {
+        byte op = in.readByte();
+        switch (op) {
+            case ADD_BOOK: {
+                Book book = new Book(readString(in), readString(in), readString(in), readString(in),
+                        readString(in), in.readInt(), readString(in), in.readInt());
+                int availableCopies = in.readInt();
+                if (availableCopies != book.getAvailableCopies()) {
+                    book.setAvailableCopies(availableCopies);
+                }
+                handler.addBook(book);
+                break;
+            }
+            case REMOVE_BOOK:
+                handler.removeBook(readString(in));
+                break;
+            case UPDATE_BOOK:
+                handler.updateBook(readString(in), readString(in), in.readInt(), readString(in), in.readInt());
+                break;
+            case ADD_MEMBER:
+                handler.addMember(new Member(readString(in), readString(in), readString(in), readString(in)));
+                break;
+            case REMOVE_MEMBER:
+                handler.removeMember(readString(in));
+                break;
+            case CHECKOUT:
+            case RETURN: {
+                String memberId = readString(in);
+                String bookId = readString(in);
+                LocalDateTime timestamp = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+                handler.circulate(op == CHECKOUT ? Transaction.Type.CHECKOUT : Transaction.Type.RETURN,
+                        memberId, bookId, timestamp);
+                break;
+            }
+            default:
+                throw new IOException("Unknown log record type " + op);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    // Strings may be null (e.g. a book without an ISBN), so each carries a presence flag
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
\ No newline at end of file
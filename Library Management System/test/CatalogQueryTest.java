@@ -0,0 +1,166 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+class CatalogQueryTest {
+    static void testIdLookupsFollowAddAndRemove() {
+        Library library = sample();
+        Book dune = library.findBookById("B1");
+        Check.equal("Dune", dune.getTitle(), "book by ID");
+        Check.equal("Ann Lee", library.findMemberById("M1").getName(), "member by ID");
+        Check.that(!library.addBook(new Book("B1", "Other", "Author", "Genre")), "duplicate book ID");
+        Check.that(!library.addMember(new Member("M1", "Other", "o@example.com", "9")), "duplicate member ID");
+
+        library.removeBook(dune);
+        library.removeMember(library.findMemberById("M1"));
+        Check.that(library.findBookById("B1") == null, "removed book");
+        Check.that(library.findMemberById("M1") == null, "removed member");
+        Check.that(library.addBook(new Book("B1", "Dune Messiah", "Frank Herbert", "Science Fiction")), "ID reusable");
+        Check.equal("Dune Messiah", library.findBookById("B1").getTitle(), "re-added book");
+    }
+
+    static void testTitleAndAuthorSubstringSearch() {
+        Library library = sample();
+        Check.equal(Arrays.asList("B3"), ids(library.findBooksByTitle("lord of")), "title substring");
+        Check.equal(Arrays.asList("B3", "B4"), ids(library.findBooksByAuthor("TOLKIEN")), "author, any case");
+        Check.equal(Arrays.asList("B1", "B2"), ids(library.findBooksByTitle("un")), "two-letter query");
+        Check.equal(Arrays.asList(), ids(library.findBooksByTitle("zzz")), "no match");
+
+        library.removeBook(library.findBookById("B3"));
+        Check.equal(Arrays.asList("B4"), ids(library.findBooksByAuthor("tolkien")), "after removal");
+    }
+
+    static void testRankedSearchPutsBestMatchFirst() {
+        Library library = sample();
+        List<Book> ranked = library.search("hobbit tolkien", 10);
+        Check.equal("B4", ranked.get(0).getId(), "both terms beat one");
+        Check.that(ids(ranked).contains("B3"), "author-only match still ranked");
+        Check.equal(1, library.search("hobbit tolkien", 1).size(), "limit");
+        Check.equal(Arrays.asList(), ids(library.search("nonexistent", 10)), "no match");
+    }
+
+    static void testAvailabilityFollowsCopies() {
+        Library library = sample();
+        Check.equal(5, library.getAvailableBookCount(), "all on the shelf");
+        library.checkoutBook("M1", "B2");
+        Check.equal(4, library.getAvailableBookCount(), "single copy out");
+        Check.that(!ids(library.getAvailableBooks()).contains("B2"), "B2 not listed");
+        library.checkoutBook("M1", "B1");
+        Check.equal(4, library.getAvailableBookCount(), "one of two copies out");
+        library.returnBook("M1", "B2");
+        Check.equal(Arrays.asList("B1", "B2", "B3", "B4", "B5"), ids(library.getAvailableBooks()), "returned");
+        library.findBookById("B5").setTotalCopies(0);
+        Check.equal(4, library.getAvailableBookCount(), "copies withdrawn");
+    }
+
+    static void testStructuredQueryCombinesCriteria() {
+        Library library = sample();
+        Check.equal(Arrays.asList("B3", "B4"), ids(library.findBooks(new BookQuery().genre("fantasy"))), "genre");
+        Check.equal(Arrays.asList("B4"),
+                ids(library.findBooks(new BookQuery().genre("Fantasy").publishedBetween(1930, 1940))), "genre and years");
+        Check.equal(Arrays.asList("B1", "B2", "B5"),
+                ids(library.findBooks(new BookQuery().publishedBetween(1960, 1970))), "years only");
+        Check.equal(Arrays.asList("B1"),
+                ids(library.findBooks(new BookQuery().publisher("Chilton").genre("Science Fiction"))), "publisher and genre");
+        library.findBookById("B1").setPublicationYear(1999);
+        Check.equal(Arrays.asList("B2", "B5"),
+                ids(library.findBooks(new BookQuery().publishedBetween(1960, 1970))), "after a year edit");
+        Check.equal(5, library.findBooks(new BookQuery()).size(), "no criteria");
+    }
+
+    static void testIsbnLookupAcceptsAnySpelling() {
+        Library library = sample();
+        Book dune = library.findBookById("B1");
+        Check.that(library.findBookByIsbn("9780441013593") == dune, "ISBN-13 without hyphens");
+        Check.that(library.findBookByIsbn("0-441-01359-7") == dune, "ISBN-10 with hyphens");
+        Check.equal(Arrays.asList("B1", "B5"), ids(library.findBooksByIsbnPrefix("978-0441", 10)), "prefix");
+        Check.equal(1, library.findBooksByIsbnPrefix("978-0441", 1).size(), "prefix limit");
+        Check.that(library.findBookByIsbn("9780000000002") == null, "unknown ISBN");
+    }
+
+    static void testFuzzySearchToleratesTypos() {
+        Library library = sample();
+        Check.equal("B3", library.findBooksFuzzy("Tolkein", 2, 10).get(0).getId(), "transposed letters");
+        Check.that(ids(library.findBooksFuzzy("Hobit", 1, 10)).contains("B4"), "missing letter");
+        Check.equal(Arrays.asList(), ids(library.findBooksFuzzy("Hobit", 0, 10)), "exact only");
+        Check.equal("B4", library.findBooksFuzzy("hobit tolkein", 2, 10).get(0).getId(), "more words matched first");
+    }
+
+    static void testAutocompleteSuggestsTitlesAuthorsAndMembers() {
+        Library library = sample();
+        Check.equal(Arrays.asList("The Hobbit", "The Lord of the Rings"), library.suggestBooks("the", 10), "titles");
+        Check.equal(Arrays.asList("Frank Herbert"), library.suggestBooks("fr", 10), "authors");
+        Check.equal(1, library.suggestBooks("the", 1).size(), "limit");
+        Check.equal(Arrays.asList("Ann Lee"), library.suggestMembers("an", 10), "members");
+        library.removeBook(library.findBookById("B4"));
+        Check.equal(Arrays.asList("The Lord of the Rings"), library.suggestBooks("the", 10), "after removal");
+    }
+
+    static void testPagesAndStreamsCoverEveryBook() {
+        Library library = new Library();
+        for (int i = 0; i < 25; i++) {
+            library.addBook(new Book("B" + i, "Title " + i, "Author", "Genre"));
+        }
+        library.removeBook(library.findBookById("B3"));
+        List<String> paged = new ArrayList<>();
+        int cursor = Page.FIRST;
+        int pages = 0;
+        while (cursor >= 0) {
+            Page<Book> page = library.getBooksPage(cursor, 10);
+            paged.addAll(ids(page.getItems()));
+            cursor = page.getNextCursor();
+            pages++;
+        }
+        Check.equal(3, pages, "pages of 10");
+        Check.equal(ids(library.getBooks()), paged, "paged books");
+        Check.equal(paged, library.streamBooks().map(Book::getId).collect(Collectors.toList()), "streamed books");
+        // "Title 1" and "Title 10" to "Title 19"
+        Check.equal(11, ids(library.findBooksByTitle("title 1")).size(), "title matches");
+        List<String> titlePages = new ArrayList<>();
+        cursor = Page.FIRST;
+        while (cursor >= 0) {
+            Page<Book> page = library.findBooksByTitle("title 1", cursor, 5);
+            titlePages.addAll(ids(page.getItems()));
+            cursor = page.getNextCursor();
+        }
+        Check.equal(ids(library.findBooksByTitle("title 1")), titlePages, "paged title matches");
+        try {
+            library.getBooksPage(Page.FIRST, 0);
+            throw new AssertionError("accepted a zero page limit");
+        } catch (IllegalArgumentException expected) {
+            // Limits must be positive
+        }
+    }
+
+    static void testDictionaryFieldsMatchIgnoringCase() {
+        Library library = sample();
+        Book hobbit = library.findBookById("B4");
+        Check.equal("Fantasy", hobbit.getGenre(), "genre spelling kept");
+        Check.equal(hobbit.getGenreCode(), library.findBookById("B3").getGenreCode(), "shared genre code");
+        Check.equal(Arrays.asList("B3", "B4"), ids(library.findBooks(new BookQuery().genre(" FANTASY "))), "folded genre");
+        hobbit.setPublisher("HarperCollins");
+        Check.equal("HarperCollins", hobbit.getPublisher(), "publisher after edit");
+        Check.equal(Arrays.asList("B4"), ids(library.findBooks(new BookQuery().publisher("harpercollins"))), "folded publisher");
+    }
+
+    private static Library sample() {
+        Library library = new Library();
+        library.addBook(new Book("B1", "Dune", "Frank Herbert", "Science Fiction", "978-0-441-01359-3", 1965, "Chilton", 2));
+        library.addBook(new Book("B2", "Dune Messiah", "Frank Herbert", "Science Fiction", null, 1969, "Putnam", 1));
+        library.addBook(new Book("B3", "The Lord of the Rings", "J. R. R. Tolkien", "Fantasy", null, 1954, "Allen & Unwin", 1));
+        library.addBook(new Book("B4", "The Hobbit", "J. R. R. Tolkien", "Fantasy", null, 1937, "Allen & Unwin", 1));
+        library.addBook(new Book("B5", "Neuromancer", "William Gibson", "Cyberpunk", "978-0441569595", 1966, "Ace", 1));
+        library.addMember(new Member("M1", "Ann Lee", "ann@example.com", "1"));
+        library.addMember(new Member("M2", "Bob Ray", "bob@example.com", "2"));
+        return library;
+    }
+
+    private static List<String> ids(List<Book> books) {
+        List<String> ids = new ArrayList<>();
+        for (Book book : books) {
+            ids.add(book.getId());
+        }
+        return ids;
+    }
+}
\ No newline at end of file
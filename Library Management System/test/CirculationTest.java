@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class CirculationTest {
+    // Batch results line up with the requested IDs, whatever happens to each item
+    static void testBatchResultsFollowRequestOrder() {
+        Library library = sample();
+        List<CirculationStatus> checkouts = library.checkoutBooks("M1", Arrays.asList("B1", "B9", "B2", "B2"));
+        Check.equal(Arrays.asList(CirculationStatus.SUCCESS, CirculationStatus.NOT_FOUND,
+                CirculationStatus.SUCCESS, CirculationStatus.UNAVAILABLE), checkouts, "checkout results");
+        Check.equal(Arrays.asList("B1", "B2"), loanIds(library.findMemberById("M1")), "loans");
+        Check.equal(2, library.getTransactionCount(Transaction.Type.CHECKOUT), "checkouts recorded");
+
+        List<CirculationStatus> returns = library.returnBooks("M1", Arrays.asList("B3", "B2", "B1"));
+        Check.equal(Arrays.asList(CirculationStatus.NOT_BORROWED, CirculationStatus.SUCCESS,
+                CirculationStatus.SUCCESS), returns, "return results");
+        Check.equal(Arrays.asList(), loanIds(library.findMemberById("M1")), "loans after returning");
+        Check.equal(4, library.getTransactionCount(), "transactions");
+
+        Check.equal(Arrays.asList(CirculationStatus.NOT_FOUND, CirculationStatus.NOT_FOUND),
+                library.checkoutBooks("M9", Arrays.asList("B1", "B2")), "unknown member");
+        Check.equal(Arrays.asList(), library.checkoutBooks("M1", new ArrayList<>()), "empty cart");
+    }
+
+    // Every attempt reports a status, and the listener hears each one, including batch items
+    static void testStatusesReachTheListener() {
+        Library library = sample();
+        List<String> heard = new ArrayList<>();
+        library.setListener(new LibraryListener() {
+            @Override
+            public void circulated(Transaction.Type type, String memberId, String bookId, CirculationStatus status) {
+                heard.add(type + " " + memberId + " " + bookId + " " + status);
+            }
+        });
+        Check.equal(CirculationStatus.SUCCESS, library.checkoutBook("M1", "B2"), "checkout");
+        Check.equal(CirculationStatus.UNAVAILABLE, library.checkoutBook("M2", "B2"), "last copy out");
+        Check.equal(CirculationStatus.NOT_FOUND, library.checkoutBook("M1", "B9"), "unknown book");
+        Check.equal(CirculationStatus.NOT_FOUND, library.checkoutBook("M9", "B1"), "unknown member");
+        Check.equal(CirculationStatus.NOT_BORROWED, library.returnBook("M2", "B2"), "not borrowed");
+        Check.equal(CirculationStatus.SUCCESS, library.returnBook("M1", "B2"), "return");
+        library.returnBooks("M1", Arrays.asList("B1"));
+
+        Check.equal(Arrays.asList(
+                "CHECKOUT M1 B2 SUCCESS",
+                "CHECKOUT M2 B2 UNAVAILABLE",
+                "CHECKOUT M1 B9 NOT_FOUND",
+                "CHECKOUT M9 B1 NOT_FOUND",
+                "RETURN M2 B2 NOT_BORROWED",
+                "RETURN M1 B2 SUCCESS",
+                "RETURN M1 B1 NOT_BORROWED"), heard, "statuses heard");
+        Check.equal(2, library.getTransactionCount(), "only successes recorded");
+    }
+
+    private static Library sample() {
+        Library library = new Library();
+        library.addBook(new Book("B1", "Dune", "Frank Herbert", "Science Fiction", null, 1965, "Chilton", 2));
+        library.addBook(new Book("B2", "Emma", "Jane Austen", "Classic", null, 1815, "John Murray", 1));
+        library.addBook(new Book("B3", "Neuromancer", "William Gibson", "Cyberpunk", null, 1984, "Ace", 1));
+        library.addMember(new Member("M1", "Ann Lee", "ann@example.com", "1"));
+        library.addMember(new Member("M2", "Bob Ray", "bob@example.com", "2"));
+        return library;
+    }
+
+    private static List<String> loanIds(Member member) {
+        List<String> ids = new ArrayList<>();
+        for (Book book : member.getBorrowedBooks()) {
+            ids.add(book.getId());
+        }
+        return ids;
+    }
+}
\ No newline at end of file
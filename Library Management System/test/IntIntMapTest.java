@@ -0,0 +1,44 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+class IntIntMapTest {
+    // Random puts, increments and removals over a small key range, so probe chains collide,
+    // wrap and get shifted back often; the map must agree with a HashMap after every step
+    static void testMatchesHashMap() {
+        Random random = new Random(42);
+        IntIntMap map = new IntIntMap(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int step = 0; step < 200000; step++) {
+            int key = random.nextInt(step < 100000 ? 64 : 4096);
+            switch (random.nextInt(3)) {
+                case 0:
+                    map.put(key, step);
+                    expected.put(key, step);
+                    break;
+                case 1:
+                    Check.equal(expected.merge(key, 2, Integer::sum), map.increment(key, 2), "increment " + key);
+                    break;
+                default:
+                    Integer removed = expected.remove(key);
+                    Check.equal(removed != null ? removed : 0, map.remove(key), "remove " + key);
+                    break;
+            }
+            Check.equal(expected.size(), map.size(), "size at step " + step);
+            Check.equal(expected.getOrDefault(key, -1), map.get(key, -1), "get " + key);
+        }
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            Check.equal(entry.getValue(), map.get(entry.getKey(), -1), "final value of " + entry.getKey());
+        }
+        List<Integer> keys = new ArrayList<>();
+        for (int key : map.keys()) {
+            keys.add(key);
+        }
+        Collections.sort(keys);
+        Check.equal(new ArrayList<>(new TreeSet<>(expected.keySet())), keys, "keys");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,308 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+class LibraryConcurrencyTest {
+    // Index queries racing additions and field edits, most of them answered by the optimistic
+    // pass, see whole books only, and never fewer than before since nothing is removed
+    static void testQueriesDuringEdits() throws Exception {
+        Library library = new Library();
+        for (int i = 0; i < 50; i++) {
+            library.addBook(new Book("B" + i, "Title " + i, "Author", "Genre", null, 2000, "Ace", 1));
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> {
+            for (int i = 50; i < 2000; i++) {
+                library.addBook(new Book("B" + i, "Title " + i, "Author", "Genre", null, 2000, "Ace", 1));
+            }
+        }));
+        threads.add(new Thread(() -> {
+            for (int round = 0; round < 40; round++) {
+                for (int i = 0; i < 50; i++) {
+                    Book book = library.findBookById("B" + i);
+                    book.setPublisher(round % 2 == 0 ? "Chilton" : "Ace");
+                    book.setPublicationYear(2000 + round);
+                    book.setIsbn(String.format("978%05d%05d", round, i));
+                }
+            }
+        }));
+        for (int reader = 0; reader < 3; reader++) {
+            threads.add(new Thread(() -> {
+                int seen = 0;
+                for (int i = 0; i < 300; i++) {
+                    List<Book> found = library.findBooksByTitle("Title");
+                    Set<String> ids = new HashSet<>();
+                    for (Book book : found) {
+                        Check.that(ids.add(book.getId()), "duplicate " + book.getId());
+                    }
+                    Check.that(found.size() >= seen, "lost books: " + found.size() + " after " + seen);
+                    seen = found.size();
+                    List<Book> other = new ArrayList<>();
+                    other.addAll(library.findBooks(new BookQuery().publisher("Chilton")));
+                    other.addAll(library.findBooks(new BookQuery().publishedBetween(2010, 2020)));
+                    other.addAll(library.search("title author", 20));
+                    other.addAll(library.findBooksFuzzy("titel", 1, 20));
+                    other.addAll(library.findBooksByIsbnPrefix("978", 20));
+                    other.addAll(library.getAvailableBooksPage(Page.FIRST, 20).getItems());
+                    for (Book book : other) {
+                        Check.that(book != null, "query returned an empty slot");
+                    }
+                    Check.that(!library.suggestBooks("title", 5).isEmpty(), "no suggestions");
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((t, e) -> failure.compareAndSet(null, e));
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("concurrent query failed", failure.get());
+        }
+        Check.equal(2000, library.findBooksByTitle("Title").size(), "books found at the end");
+        Check.equal(2000, library.getBookCount(), "books");
+    }
+
+    // Each round races a member cycling a book in and out against the book's removal.
+    // Whoever wins, the availability index holds live books only and the log replays to the
+    // same loans.
+    static void testCheckoutAgainstRemove() throws Exception {
+        Path directory = Check.tempDirectory();
+        String snapshot = directory.resolve("lib.dat").toString();
+        String log = directory.resolve("lib.wal").toString();
+        Library library = Library.openWithLog(snapshot, log, null);
+        library.addMember(new Member("M1", "Ann", "ann@example.com", "1"));
+        library.addBook(new Book("KEEP", "Kept", "Author", "Genre", null, 2000, "Ace", 1));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        for (int round = 0; round < 300 && failure.get() == null; round++) {
+            String bookId = "R" + round;
+            library.addBook(new Book(bookId, "Raced " + round, "Author", "Genre", null, 2000, "Ace", 1));
+            Book book = library.findBookById(bookId);
+            CountDownLatch start = new CountDownLatch(1);
+            Thread member = new Thread(() -> {
+                awaitQuietly(start);
+                while (library.checkoutBook("M1", bookId) != CirculationStatus.NOT_FOUND) {
+                    if (library.returnBook("M1", bookId) == CirculationStatus.NOT_FOUND) {
+                        break;
+                    }
+                }
+            });
+            Thread remover = new Thread(() -> {
+                awaitQuietly(start);
+                library.removeBook(book);
+            });
+            for (Thread thread : new Thread[] {member, remover}) {
+                thread.setUncaughtExceptionHandler((t, e) -> failure.compareAndSet(null, e));
+                thread.start();
+            }
+            start.countDown();
+            member.join();
+            remover.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("circulation raced removal", failure.get());
+        }
+
+        List<Book> available = library.getAvailableBooks();
+        Check.equal(1, available.size(), "available books");
+        Check.equal("KEEP", available.get(0).getId(), "available book");
+        Check.equal(1, library.getAvailableBookCount(), "available book count");
+        Set<String> loans = loanIds(library.findMemberById("M1"));
+        library.close();
+
+        Library replayed = Library.openWithLog(snapshot, log, null);
+        try {
+            Check.equal(loans, loanIds(replayed.findMemberById("M1")), "loans after replay");
+            Check.equal(1, replayed.getBookCount(), "books after replay");
+        } finally {
+            replayed.close();
+        }
+    }
+
+    // Members racing for the same few copies: exactly as many checkouts win as there are
+    // copies, and each winner holds the book
+    static void testConcurrentCheckoutsNeverOversell() throws Exception {
+        Library library = new Library();
+        library.addBook(new Book("B1", "Dune", "Frank Herbert", "Science Fiction", null, 1965, "Chilton", 5));
+        int members = 40;
+        for (int i = 0; i < members; i++) {
+            library.addMember(new Member("M" + i, "Member " + i, "m" + i + "@example.com", "" + i));
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        CirculationStatus[] results = new CirculationStatus[members];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < members; i++) {
+            int index = i;
+            threads.add(new Thread(() -> {
+                awaitQuietly(start);
+                results[index] = library.checkoutBook("M" + index, "B1");
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((t, e) -> failure.compareAndSet(null, e));
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("concurrent checkout failed", failure.get());
+        }
+
+        int succeeded = 0;
+        for (int i = 0; i < members; i++) {
+            boolean holds = loanIds(library.findMemberById("M" + i)).contains("B1");
+            if (results[i] == CirculationStatus.SUCCESS) {
+                succeeded++;
+                Check.that(holds, "M" + i + " checked out without a loan");
+            } else {
+                Check.equal(CirculationStatus.UNAVAILABLE, results[i], "M" + i + " status");
+                Check.that(!holds, "M" + i + " holds a loan it was refused");
+            }
+        }
+        Book book = library.findBookById("B1");
+        Check.equal(5, succeeded, "successful checkouts");
+        Check.equal(0, book.getAvailableCopies(), "copies left");
+        Check.equal(5, library.getBorrowers("B1").size(), "borrowers");
+        Check.equal(5, library.getTransactionCount(Transaction.Type.CHECKOUT), "checkouts recorded");
+        Check.equal(0, library.getAvailableBookCount(), "available books");
+    }
+
+    // Carts and single checkouts racing for the same books: for each book, the history
+    // lists its circulation in the order the log replays it
+    static void testBatchHistoryFollowsLogOrder() throws Exception {
+        Path directory = Check.tempDirectory();
+        String snapshot = directory.resolve("lib.dat").toString();
+        String log = directory.resolve("lib.wal").toString();
+        Library library = Library.openWithLog(snapshot, log, null);
+        List<String> bookIds = Arrays.asList("B0", "B1", "B2", "B3");
+        for (String id : bookIds) {
+            library.addBook(new Book(id, "Title " + id, "Author", "Genre", null, 2000, "Ace", 1));
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        library.addMember(new Member("CART", "Cart", "cart@example.com", "0"));
+        threads.add(new Thread(() -> {
+            awaitQuietly(start);
+            for (int round = 0; round < 300; round++) {
+                library.checkoutBooks("CART", bookIds);
+                library.returnBooks("CART", bookIds);
+            }
+        }));
+        for (int i = 0; i < 2; i++) {
+            String memberId = "M" + i;
+            library.addMember(new Member(memberId, "Member " + i, memberId + "@example.com", "" + i));
+            threads.add(new Thread(() -> {
+                awaitQuietly(start);
+                for (int round = 0; round < 300; round++) {
+                    String bookId = bookIds.get(round % bookIds.size());
+                    if (library.checkoutBook(memberId, bookId) == CirculationStatus.SUCCESS) {
+                        library.returnBook(memberId, bookId);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((t, e) -> failure.compareAndSet(null, e));
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("circulation failed", failure.get());
+        }
+        Map<String, List<String>> recorded = historyByBook(library);
+        library.close();
+
+        Library replayed = Library.openWithLog(snapshot, log, null);
+        try {
+            Check.equal(recorded, historyByBook(replayed), "history per book after replay");
+        } finally {
+            replayed.close();
+        }
+    }
+
+    private static Map<String, List<String>> historyByBook(Library library) {
+        Map<String, List<String>> entries = new HashMap<>();
+        for (Transaction transaction : library.getTransactions()) {
+            entries.computeIfAbsent(transaction.getBook().getId(), id -> new ArrayList<>())
+                    .add(transaction.getType() + " " + transaction.getMember().getId());
+        }
+        return entries;
+    }
+
+    // Threads taking and returning copies of one book directly: the count stays within
+    // [0, totalCopies] throughout and is back to full once every taken copy is returned
+    static void testCopyCountersUnderContention() throws Exception {
+        Book book = new Book("B1", "Dune", "Frank Herbert", "Science Fiction", null, 1965, "Chilton", 3);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(() -> {
+                awaitQuietly(start);
+                for (int round = 0; round < 20000; round++) {
+                    if (book.tryAcquireCopy()) {
+                        int copies = book.getAvailableCopies();
+                        Check.that(copies >= 0 && copies <= 3, "copies out of range: " + copies);
+                        Check.that(book.releaseCopy(), "taken copy could not be returned");
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((t, e) -> failure.compareAndSet(null, e));
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("copy counters raced", failure.get());
+        }
+        Check.equal(3, book.getAvailableCopies(), "copies after every return");
+        Check.that(!book.releaseCopy(), "returned a copy beyond the total");
+
+        // Copies added or withdrawn move the shelf count with them, never below zero
+        book.tryAcquireCopy();
+        book.tryAcquireCopy();
+        book.setTotalCopies(5);
+        Check.equal(3, book.getAvailableCopies(), "after adding copies");
+        book.setTotalCopies(1);
+        Check.equal(0, book.getAvailableCopies(), "after withdrawing copies");
+        Check.that(!book.isAvailable(), "withdrawn book available");
+    }
+
+    private static Set<String> loanIds(Member member) {
+        Set<String> ids = new HashSet<>();
+        for (Book book : member.getBorrowedBooks()) {
+            ids.add(book.getId());
+        }
+        return ids;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,198 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class LibraryFilesTest {
+    // library_data.ser was written by Java serialization before the compact format
+    static void testLegacySerializedFileLoads() throws Exception {
+        Exception[] failure = {null};
+        Library library = Library.loadFromFile("library_data.ser", new LibraryListener() {
+            @Override
+            public void loadFailed(String filename, Exception error) {
+                failure[0] = error;
+            }
+        });
+        Check.equal(null, failure[0], "load failure");
+        Check.equal(4, library.getBookCount(), "books");
+        Check.equal(2, library.getMemberCount(), "members");
+        for (Book book : library.getBooks()) {
+            Check.that(library.findBookById(book.getId()) == book, "ID index rebuilt for " + book.getId());
+        }
+        Check.equal(CirculationStatus.SUCCESS,
+                library.checkoutBook("M001", library.getBooks().get(0).getId()), "checkout after loading");
+    }
+
+    // The rename is followed by forcing the directory; the file must still land whole
+    static void testSaveReplacesFileAtomically() throws Exception {
+        Path directory = Check.tempDirectory();
+        Path file = directory.resolve("lib.dat");
+        Library library = new Library();
+        library.addBook(new Book("B1", "Dune", "Frank Herbert", "Science Fiction"));
+        Check.that(library.saveToFile(file.toString()), "first save");
+        library.addBook(new Book("B2", "Emma", "Jane Austen", "Classic"));
+        Check.that(library.saveToFile(file.toString()), "second save");
+        Check.that(!Files.exists(directory.resolve("lib.dat.tmp")), "temporary file left behind");
+        Check.equal(2, Library.loadFromFile(file.toString()).getBookCount(), "books after reloading");
+        DirectorySync.forceParent(file);
+        DirectorySync.forceParent(Paths.get("relative.dat"));
+    }
+
+    // Every field of books, members, loans and history comes back from the compact format
+    static void testCompactFormatRoundTrip() throws Exception {
+        Path file = Check.tempDirectory().resolve("lib.dat");
+        Library library = new Library();
+        library.addBook(new Book("B1", "Dune", "Frank Herbert", "Science Fiction", "978-0441013593", 1965, "Chilton", 3));
+        library.addBook(new Book("B2", "Émile", "Jean-Jacques Rousseau", "Philosophy", null, 1762, null, 1));
+        library.addMember(new Member("M1", "Ann Lee", "ann@example.com", "555-0101"));
+        library.addMember(new Member("M2", "Bob Ray", "bob@example.com", ""));
+        library.checkoutBook("M1", "B1");
+        library.checkoutBook("M2", "B1");
+        library.checkoutBook("M2", "B2");
+        library.returnBook("M2", "B2");
+        Check.that(library.saveToFile(file.toString()), "save");
+
+        Library loaded = Library.loadFromFile(file.toString());
+        Check.equal(render(library), render(loaded), "library after reloading");
+        Check.equal(1, loaded.findBookById("B1").getAvailableCopies(), "copies left of B1");
+        Check.that(loaded.findBookByIsbn("0441013597") == loaded.findBookById("B1"), "ISBN index rebuilt");
+        Check.that(loaded.findMemberById("M1").getBorrowedBooks().get(0) == loaded.findBookById("B1"),
+                "loans refer to catalog books");
+        Check.equal(CirculationStatus.SUCCESS, loaded.returnBook("M2", "B1"), "return after reloading");
+
+        // Saving what was loaded writes the same bytes
+        Path again = file.resolveSibling("again.dat");
+        Check.that(Library.loadFromFile(file.toString()).saveToFile(again.toString()), "second save");
+        Check.that(Arrays.equals(Files.readAllBytes(file), Files.readAllBytes(again)), "bytes after a second save");
+    }
+
+    // Table sizes come from the file, so a corrupt or cut-off one must fail as a format error
+    // before anything is allocated for it
+    static void testCorruptCountsRejected() throws Exception {
+        // Varints after the magic and version: dictionary size, then books, members and
+        // transactions, each table an empty one until the corrupt count
+        long[][] headers = {
+                {2_000_000_000L},                                      // dictionary
+                {0, 2_000_000_000L, 0},                                // books
+                {0, Integer.MAX_VALUE, Integer.MAX_VALUE},             // books, overflowing an int
+                {0, 0, 0, 0, 1_000_000_000L},                          // members
+                {0, 0, 0, 0, 0, 500_000_000L},                         // transactions
+        };
+        for (long[] varints : headers) {
+            ByteArrayOutputStream file = new ByteArrayOutputStream();
+            file.write(new byte[] {0x4C, 0x4D, 0x53, 0x42}); // magic
+            file.write(2);                                  // version
+            for (long varint : varints) {
+                for (long value = varint; ; value >>>= 7) {
+                    if (value < 0x80) {
+                        file.write((int) value);
+                        break;
+                    }
+                    file.write((int) (value & 0x7F) | 0x80);
+                }
+            }
+            expectCorrupt(file.toByteArray(), "header " + Arrays.toString(varints));
+        }
+
+        Path saved = Check.tempDirectory().resolve("lib.dat");
+        Library library = new Library();
+        library.addBook(new Book("B1", "Dune", "Frank Herbert", "Science Fiction", "978-0441013593", 1965, "Chilton", 3));
+        library.addMember(new Member("M1", "Ann Lee", "ann@example.com", "555-0101"));
+        library.checkoutBook("M1", "B1");
+        Check.that(library.saveToFile(saved.toString()), "save");
+        byte[] bytes = Files.readAllBytes(saved);
+        for (int length = 0; length < bytes.length; length++) {
+            expectCorrupt(Arrays.copyOf(bytes, length), "file cut to " + length + " bytes");
+        }
+    }
+
+    private static void expectCorrupt(byte[] file, String what) {
+        try {
+            LibraryCodec.decode(new ByteArrayInputStream(file));
+        } catch (IOException e) {
+            return;
+        }
+        throw new AssertionError(what + " decoded");
+    }
+
+    // Counts are kept by ordinal at runtime and by ID in the file; a removed book's count
+    // is kept under its ID and picked up again if the book comes back
+    static void testCheckoutCountsSurviveRemovalAndSave() throws Exception {
+        Path file = Check.tempDirectory().resolve("lib.dat");
+        Library library = new Library();
+        library.addBook(new Book("B1", "Dune", "Frank Herbert", "Science Fiction"));
+        library.addBook(new Book("B2", "Emma", "Jane Austen", "Classic"));
+        library.addMember(new Member("M1", "Ann Lee", "ann@example.com", "1"));
+        for (int i = 0; i < 3; i++) {
+            library.checkoutBook("M1", "B1");
+            library.returnBook("M1", "B1");
+        }
+        library.checkoutBook("M1", "B2");
+        library.returnBook("M1", "B2");
+        Book emma = library.findBookById("B2");
+        library.removeBook(emma);
+        library.saveToFile(file.toString());
+        Check.equal(stats("B1", 3, "B2", 1), savedStats(file), "counts after removing B2");
+
+        Library loaded = Library.loadFromFile(file.toString());
+        loaded.addBook(new Book("B2", "Emma", "Jane Austen", "Classic"));
+        loaded.checkoutBook("M1", "B2");
+        loaded.checkoutBook("M1", "B1");
+        loaded.saveToFile(file.toString());
+        Check.equal(stats("B1", 4, "B2", 2), savedStats(file), "counts after re-adding B2");
+    }
+
+    static void testSerializationIsReadOnly() throws Exception {
+        try (ObjectOutputStream out = new ObjectOutputStream(new ByteArrayOutputStream())) {
+            out.writeObject(new Library());
+            throw new AssertionError("wrote a Library through Java serialization");
+        } catch (NotSerializableException expected) {
+            // saveToFile is the only writer
+        }
+    }
+
+    private static List<String> render(Library library) {
+        List<String> rendered = new ArrayList<>();
+        for (Book book : library.getBooks()) {
+            rendered.add(book.getId() + "|" + book.getTitle() + "|" + book.getAuthor() + "|" + book.getGenre() + "|"
+                    + book.getIsbn() + "|" + book.getPublicationYear() + "|" + book.getPublisher() + "|"
+                    + book.getTotalCopies() + "|" + book.getAvailableCopies());
+        }
+        for (Member member : library.getMembers()) {
+            StringBuilder line = new StringBuilder(member.getId() + "|" + member.getName() + "|"
+                    + member.getEmail() + "|" + member.getPhoneNumber());
+            for (Book book : member.getBorrowedBooks()) {
+                line.append("|").append(book.getId());
+            }
+            rendered.add(line.toString());
+        }
+        for (Transaction transaction : library.getTransactions()) {
+            rendered.add(transaction.getType() + "|" + transaction.getMember().getId() + "|"
+                    + transaction.getBook().getId() + "|" + transaction.getTimestamp());
+        }
+        return rendered;
+    }
+
+    private static Map<String, Integer> stats(String firstId, int firstCount, String secondId, int secondCount) {
+        Map<String, Integer> stats = new HashMap<>();
+        stats.put(firstId, firstCount);
+        stats.put(secondId, secondCount);
+        return stats;
+    }
+
+    private static Map<String, Integer> savedStats(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return new HashMap<>(LibraryCodec.decode(in).bookStats);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,125 @@
+import java.nio.file.Path;
+import java.util.Arrays;
+
+class MappedBookStoreTest {
+    static void testRecordsSurviveReopenAndResize() throws Exception {
+        String base = Check.tempDirectory().resolve("catalog").toString();
+        Book lent = new Book("S0", "Dune", "Frank Herbert", "Science Fiction", "978-0441013593", 1965, "Chilton", 3);
+        lent.setAvailableCopies(1);
+        try (MappedBookStore store = MappedBookStore.open(base)) {
+            store.put(lent);
+            // Enough to grow the index past its initial slots
+            for (int i = 1; i < 1500; i++) {
+                store.put(new Book("S" + i, "Title " + i, "Author", "Genre", null, 2000, null, 1));
+            }
+            store.put(new Book("S1", "Replaced", "Author", "Genre", null, 2001, null, 2));
+            Check.that(store.remove("S2"), "removed a stored book");
+            Check.that(!store.remove("S2"), "removed twice");
+        }
+
+        try (MappedBookStore store = MappedBookStore.open(base)) {
+            Check.equal(1499, store.size(), "stored books");
+            Book restored = store.get("S0");
+            Check.equal("Dune", restored.getTitle(), "title");
+            Check.equal("Frank Herbert", restored.getAuthor(), "author");
+            Check.equal("978-0441013593", restored.getIsbn(), "ISBN");
+            Check.equal(1965, restored.getPublicationYear(), "year");
+            Check.equal("Chilton", restored.getPublisher(), "publisher");
+            Check.equal(3, restored.getTotalCopies(), "total copies");
+            Check.equal(1, restored.getAvailableCopies(), "available copies");
+            Check.equal("Replaced", store.get("S1").getTitle(), "replaced record");
+            Check.that(store.get("S2") == null, "removed record");
+            Check.equal("Title 1499", store.get("S1499").getTitle(), "last record");
+            Check.that(store.get("missing") == null, "unknown ID");
+        }
+    }
+
+    // Stored books are found by ID and circulate, but searches, listings and counts cover
+    // the in-memory catalog only; at most the working set stays loaded, except books on loan
+    static void testStoredBooksFoundByIdOnly() throws Exception {
+        Path directory = Check.tempDirectory();
+        try (MappedBookStore store = MappedBookStore.open(directory.resolve("catalog").toString())) {
+            for (int i = 0; i < 10; i++) {
+                store.put(new Book("S" + i, "Stored Title " + i, "Author", "Genre", null, 2000, null, 1));
+            }
+            Library library = new Library();
+            library.addMember(new Member("M1", "Ann", "ann@example.com", "1"));
+            library.attachCatalogStore(store, 2);
+
+            Book first = library.findBookById("S0");
+            Book lent = library.findBookById("S1");
+            Check.equal("Stored Title 0", first.getTitle(), "stored book by ID");
+            Check.equal(CirculationStatus.SUCCESS, library.checkoutBook("M1", "S1"), "checkout of a stored book");
+            for (int i = 2; i < 10; i++) {
+                Check.that(library.findBookById("S" + i) != null, "stored book S" + i);
+            }
+            Check.that(library.findBookById("S0") != first, "least recently used book still loaded");
+            Check.that(library.findBookById("S1") == lent, "book on loan evicted");
+            Check.equal(0, lent.getAvailableCopies(), "copies of the lent book");
+            Check.equal(Arrays.asList(library.findMemberById("M1")), library.getBorrowers("S1"), "borrowers");
+
+            Check.equal(0, library.findBooksByTitle("Stored").size(), "title search");
+            Check.equal(0, library.search("stored", 10).size(), "ranked search");
+            Check.equal(0, library.getBooks().size(), "listing");
+            Check.equal(0, library.getAvailableBooks().size(), "available books");
+            Check.equal(0, library.getBookCount(), "book count");
+
+            Check.equal(CirculationStatus.SUCCESS, library.returnBook("M1", "S1"), "return of a stored book");
+            Check.equal(1, lent.getAvailableCopies(), "copies after the return");
+        }
+    }
+
+    // With a store attached, additions, edits and removals are written to it
+    static void testCatalogWritesReachTheStore() throws Exception {
+        Path directory = Check.tempDirectory();
+        try (MappedBookStore store = MappedBookStore.open(directory.resolve("catalog").toString())) {
+            store.put(new Book("S1", "Stored Title", "Author", "Genre", null, 2000, null, 1));
+            Library library = new Library();
+            library.attachCatalogStore(store, 2);
+
+            Check.that(!library.addBook(new Book("S1", "Other", "Author", "Genre")), "duplicate of a stored ID");
+            Check.that(library.addBook(new Book("N1", "New Title", "Author", "Genre")), "new book");
+            Check.equal("New Title", store.get("N1").getTitle(), "new book stored");
+            Check.equal(0, library.getBookCount(), "new book kept out of the heap catalog");
+
+            library.findBookById("S1").setPublisher("Ace");
+            Check.equal("Ace", store.get("S1").getPublisher(), "edit stored");
+
+            library.removeBook(library.findBookById("S1"));
+            Check.that(!store.contains("S1"), "removed from the store");
+            Check.that(library.findBookById("S1") == null, "removed book loaded again");
+        }
+    }
+
+    // Loans of stored books come back from the snapshot and the log on reopening, holding
+    // the copy that lookups return, with the copies out counted once
+    static void testStoredLoansSurviveReopen() throws Exception {
+        Path directory = Check.tempDirectory();
+        String snapshot = directory.resolve("lib.dat").toString();
+        String log = directory.resolve("lib.wal").toString();
+        try (MappedBookStore store = MappedBookStore.open(directory.resolve("catalog").toString())) {
+            store.put(new Book("S1", "Snapshotted", "Author", "Genre", null, 2000, null, 2));
+            store.put(new Book("S2", "Logged", "Author", "Genre", null, 2000, null, 2));
+            Library library = Library.openWithLog(snapshot, log, store, null);
+            library.addMember(new Member("M1", "Ann", "ann@example.com", "1"));
+            library.checkoutBook("M1", "S1");
+            Check.that(library.saveToFile(snapshot), "save");
+            library.checkoutBook("M1", "S2");
+            library.close();
+
+            Library reopened = Library.openWithLog(snapshot, log, store, null);
+            try {
+                Member member = reopened.findMemberById("M1");
+                for (String id : Arrays.asList("S1", "S2")) {
+                    Book book = reopened.findBookById(id);
+                    Check.that(member.getBorrowedBooks().contains(book), "loan of " + id + " holds the loaded copy");
+                    Check.equal(1, book.getAvailableCopies(), "copies of " + id);
+                    Check.equal(CirculationStatus.SUCCESS, reopened.returnBook("M1", id), "return of " + id);
+                    Check.equal(2, book.getAvailableCopies(), "copies of " + id + " after the return");
+                }
+            } finally {
+                reopened.close();
+            }
+        }
+    }
+}
\ No newline at end of file
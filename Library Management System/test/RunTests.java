@@ -0,0 +1,55 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// Runs every static no-argument "test..." method of the test classes below and exits
+// non-zero if any failed. Build and run with run-tests.bat.
+public class RunTests {
+    private static final List<Class<?>> TEST_CLASSES = Arrays.asList(
+            CatalogQueryTest.class,
+            CirculationTest.class,
+            IntIntMapTest.class,
+            LibraryConcurrencyTest.class,
+            LibraryFilesTest.class,
+            MappedBookStoreTest.class,
+            SnapshotterTest.class,
+            TransactionHistoryTest.class,
+            WriteAheadLogTest.class
+    );
+
+    public static void main(String[] args) {
+        int passed = 0;
+        int failed = 0;
+        for (Class<?> testClass : TEST_CLASSES) {
+            Method[] methods = testClass.getDeclaredMethods();
+            Arrays.sort(methods, Comparator.comparing(Method::getName));
+            for (Method method : methods) {
+                if (!method.getName().startsWith("test") || !Modifier.isStatic(method.getModifiers())
+                        || method.getParameterCount() != 0) {
+                    continue;
+                }
+                String name = testClass.getSimpleName() + "." + method.getName();
+                try {
+                    method.setAccessible(true);
+                    method.invoke(null);
+                    passed++;
+                    System.out.println("PASS " + name);
+                } catch (InvocationTargetException e) {
+                    failed++;
+                    System.out.println("FAIL " + name);
+                    e.getCause().printStackTrace(System.out);
+                } catch (IllegalAccessException e) {
+                    failed++;
+                    System.out.println("FAIL " + name + ": " + e);
+                }
+            }
+        }
+        System.out.println(passed + " passed, " + failed + " failed");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class SnapshotterTest {
+    // A listener that throws from saved() stands in for any unexpected failure on the
+    // snapshot thread
+    static void testTimerSurvivesFailedSnapshot() throws Exception {
+        Path directory = Check.tempDirectory();
+        String snapshot = directory.resolve("lib.dat").toString();
+        AtomicInteger saves = new AtomicInteger();
+        List<Exception> failures = Collections.synchronizedList(new ArrayList<>());
+        LibraryListener listener = new LibraryListener() {
+            @Override
+            public void saved(String filename) {
+                if (saves.incrementAndGet() == 1) {
+                    throw new IllegalStateException("listener failed");
+                }
+            }
+
+            @Override
+            public void snapshotFailed(String filename, Exception error) {
+                failures.add(error);
+            }
+        };
+
+        Library library = Library.openWithLog(snapshot, directory.resolve("lib.wal").toString(), listener);
+        try {
+            library.startSnapshots(snapshot, 2, 0, 10);
+            library.addBook(new Book("B1", "Dune", "Frank Herbert", "Science Fiction", null, 1965, "Chilton", 2));
+            waitFor(() -> failures.size() == 1, "failure reported");
+            Check.that(failures.get(0) instanceof IllegalStateException, "reported " + failures.get(0));
+
+            library.addBook(new Book("B2", "Emma", "Jane Austen", "Classic", null, 1815, "John Murray", 1));
+            waitFor(() -> saves.get() == 2, "timer still snapshotting after a failure");
+            Check.equal(1, failures.size(), "failures");
+        } finally {
+            library.close();
+        }
+    }
+
+    static void testSnapshotNowReportsFailure() throws Exception {
+        Path directory = Check.tempDirectory();
+        String snapshot = directory.resolve("lib.dat").toString();
+        List<Exception> failures = new ArrayList<>();
+        LibraryListener listener = new LibraryListener() {
+            @Override
+            public void saved(String filename) {
+                throw new IllegalStateException("listener failed");
+            }
+
+            @Override
+            public void snapshotFailed(String filename, Exception error) {
+                failures.add(error);
+            }
+        };
+
+        Library library = Library.openWithLog(snapshot, directory.resolve("lib.wal").toString(), listener);
+        try {
+            library.startSnapshots(snapshot, 2, 0, 0);
+            library.addBook(new Book("B1", "Dune", "Frank Herbert", "Science Fiction", null, 1965, "Chilton", 2));
+            Check.that(!library.snapshotNow(), "failed snapshot reported as failed");
+            Check.equal(1, failures.size(), "failures reported");
+        } finally {
+            library.close();
+        }
+    }
+
+    // Only the newest generations stay on disk, log segments covered by all of them are
+    // deleted, and reopening restores the last snapshot plus the log written after it
+    static void testOldGenerationsAndLogSegmentsDeleted() throws Exception {
+        Path directory = Check.tempDirectory();
+        String snapshot = directory.resolve("lib.dat").toString();
+        String log = directory.resolve("lib.wal").toString();
+
+        Library library = Library.openWithLog(snapshot, log, null);
+        library.startSnapshots(snapshot, 2, 0, 0);
+        for (int i = 0; i < 5; i++) {
+            library.addBook(new Book("B" + i, "Title " + i, "Author", "Genre", null, 2000, "Ace", 1));
+            Check.that(library.snapshotNow(), "snapshot " + i);
+        }
+        library.addBook(new Book("LATE", "After the last snapshot", "Author", "Genre", null, 2000, "Ace", 1));
+        library.close();
+
+        Check.equal(Arrays.asList("lib.dat.000004", "lib.dat.000005"), files(directory, "lib\\.dat\\.\\d+"),
+                "generations kept");
+        // The segment the newest generations start from, and the one after the last snapshot
+        Check.equal(2, files(directory, "lib\\.wal\\.\\d+").size(), "log segments kept");
+
+        Library reopened = Library.openWithLog(snapshot, log, null);
+        try {
+            Check.equal(6, reopened.getBookCount(), "books after reopening");
+            Check.that(reopened.findBookById("LATE") != null, "change after the last snapshot");
+        } finally {
+            reopened.close();
+        }
+    }
+
+    // Only changes make a library dirty, and a clean library writes no new generation
+    static void testUnchangedLibraryWritesNothing() throws Exception {
+        Path directory = Check.tempDirectory();
+        String snapshot = directory.resolve("lib.dat").toString();
+        Library library = Library.openWithLog(snapshot, directory.resolve("lib.wal").toString(), null);
+        try {
+            Check.that(!library.hasUnsavedChanges(), "dirty when opened");
+            library.addBook(new Book("B1", "Dune", "Frank Herbert", "Science Fiction", null, 1965, "Chilton", 1));
+            library.addMember(new Member("M1", "Ann Lee", "ann@example.com", "1"));
+            Check.that(library.hasUnsavedChanges(), "clean after adding");
+            Check.that(library.saveToFile(directory.resolve("copy.dat").toString()), "save");
+            Check.that(!library.hasUnsavedChanges(), "dirty after saving");
+
+            library.startSnapshots(snapshot, 2, 0, 0);
+            Check.equal(CirculationStatus.NOT_FOUND, library.checkoutBook("M1", "B9"), "unknown book");
+            Check.that(!library.hasUnsavedChanges(), "dirty after a failed checkout");
+            Check.that(!library.saveInBackground(), "background save of a clean library");
+            Check.that(library.snapshotNow(), "snapshot of a clean library");
+            Check.equal(Arrays.asList(), files(directory, "lib\\.dat\\.\\d+"), "generations of a clean library");
+
+            library.checkoutBook("M1", "B1");
+            Check.that(library.hasUnsavedChanges(), "clean after a checkout");
+            Check.that(library.snapshotNow(), "snapshot");
+            Check.that(!library.hasUnsavedChanges(), "dirty after a snapshot");
+            Check.that(library.snapshotNow(), "second snapshot");
+            Check.equal(1, files(directory, "lib\\.dat\\.\\d+").size(), "generations");
+        } finally {
+            library.close();
+        }
+    }
+
+    private static List<String> files(Path directory, String pattern) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.matches(pattern))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    private static void waitFor(Condition condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.holds()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError(message);
+            }
+            Thread.sleep(5);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,211 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+class TransactionHistoryTest {
+    // Members in sealed segments still have open loans on books outside the segment
+    static void testSealWithOpenLoans() throws Exception {
+        Path directory = Check.tempDirectory();
+        String snapshot = directory.resolve("lib.dat").toString();
+        String log = directory.resolve("lib.wal").toString();
+        int[] replayed = {-1};
+        LibraryListener listener = new LibraryListener() {
+            @Override
+            public void replayed(String filename, int records) {
+                replayed[0] = records;
+            }
+        };
+
+        Library library = Library.openWithLog(snapshot, log, listener);
+        library.startSnapshots(snapshot, 2, 0, 0);
+        for (int i = 0; i < 40; i++) {
+            library.addBook(new Book("B" + i, "Title " + i, "Author", "Genre", null, 2000, "Publisher", 2));
+        }
+        library.addBook(new Book("X", "Never in a sealed segment", "Author", "Genre", null, 2000, "Publisher", 1));
+        library.addMember(new Member("M1", "Ann", "ann@example.com", "1"));
+        library.addMember(new Member("M2", "Bob", "bob@example.com", "2"));
+        // M1 appears in every sealed segment while holding a book none of them mention
+        Check.equal(CirculationStatus.SUCCESS, library.checkoutBook("M1", "X"), "open loan");
+        for (int i = 0; i < 3 * TransactionHistory.SEGMENT_SIZE; i++) {
+            String bookId = "B" + (i % 40);
+            library.checkoutBook("M1", bookId);
+            library.returnBook("M1", bookId);
+        }
+        Check.equal(CirculationStatus.SUCCESS, library.checkoutBook("M2", "B2"), "open loan");
+        List<String> before = render(library.getTransactions());
+
+        Check.that(library.snapshotNow(), "snapshot with segments to seal");
+        try (Stream<Path> files = Files.list(directory.resolve("lib.dat.history"))) {
+            Check.that(files.filter(path -> path.toString().endsWith(".seg")).count() > 2, "more than 2 segments");
+        }
+        library.close();
+
+        Library reopened = Library.openWithLog(snapshot, log, listener);
+        try {
+            // The listener only hears about a replay that re-applied something
+            Check.equal(-1, replayed[0], "log records replayed after the snapshot");
+            Check.equal(before, render(reopened.getTransactions()), "history after reopening");
+            Check.equal("X", reopened.findMemberById("M1").getBorrowedBooks().get(0).getId(), "M1 loan");
+            Check.equal(1, reopened.findMemberById("M2").getBorrowedBooks().size(), "M2 loans");
+            Transaction sealed = reopened.getTransactions().get(1);
+            Check.that(sealed.getBook() == reopened.findBookById("B0"), "sealed rows refer to catalog books");
+        } finally {
+            reopened.close();
+        }
+    }
+
+    // Filters over sealed and resident history give the same rows as checking each one
+    static void testFindMatchesAcrossSealedSegments() throws Exception {
+        Path directory = Check.tempDirectory();
+        String snapshot = directory.resolve("lib.dat").toString();
+        Library library = Library.openWithLog(snapshot, directory.resolve("lib.wal").toString(), null);
+        try {
+            library.startSnapshots(snapshot, 2, 0, 0);
+            for (int i = 0; i < 12; i++) {
+                library.addBook(new Book("B" + i, "Title " + i, "Author", "Genre", null, 2000, "Publisher", 1));
+            }
+            library.addMember(new Member("M1", "Ann Lee", "ann@example.com", "1"));
+            library.addMember(new Member("M2", "Bob Ray", "bob@example.com", "2"));
+            for (int i = 0; i < 2 * TransactionHistory.SEGMENT_SIZE + 100; i++) {
+                String memberId = i % 3 == 0 ? "M2" : "M1";
+                String bookId = "B" + (i % 12);
+                library.checkoutBook(memberId, bookId);
+                library.returnBook(memberId, bookId);
+            }
+            Check.that(library.snapshotNow(), "snapshot sealing segments");
+            try (Stream<Path> files = Files.list(directory.resolve("lib.dat.history"))) {
+                Check.that(files.anyMatch(path -> path.toString().endsWith(".seg")), "sealed segments");
+            }
+
+            List<Transaction> all = library.getTransactions();
+            String time = all.get(5).getTimestamp().toString().substring(0, 16);
+            Object[][] filters = {
+                    {null, "title 1"}, {Transaction.Type.RETURN, ""}, {Transaction.Type.CHECKOUT, "bob"},
+                    {null, "return"}, {null, "LEE"}, {null, time}, {null, "nothing like this"}
+            };
+            for (Object[] filter : filters) {
+                Transaction.Type type = (Transaction.Type) filter[0];
+                String text = (String) filter[1];
+                List<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < all.size(); i++) {
+                    if (matches(all.get(i), type, text)) {
+                        expected.add(i);
+                    }
+                }
+                int[] found = library.findTransactions(type, text);
+                List<Integer> actual = new ArrayList<>();
+                for (int position : found) {
+                    actual.add(position);
+                }
+                Check.equal(expected, actual, "positions for " + type + " \"" + text + "\"");
+                if (found.length > 0) {
+                    List<Transaction> page = library.getTransactionsAt(found, 0, Math.min(found.length, 20));
+                    Check.equal(render(all.subList(found[0], found[0] + 1)), render(page.subList(0, 1)), "first match");
+                }
+            }
+        } finally {
+            library.close();
+        }
+    }
+
+    // Pages and time cursors line up with the full history across sealed and resident rows
+    static void testPagesAndCursorsAcrossSealedSegments() throws Exception {
+        Path directory = Check.tempDirectory();
+        String snapshot = directory.resolve("lib.dat").toString();
+        Library library = Library.openWithLog(snapshot, directory.resolve("lib.wal").toString(), null);
+        try {
+            library.startSnapshots(snapshot, 2, 0, 0);
+            library.addBook(new Book("B1", "Dune", "Frank Herbert", "Science Fiction", null, 1965, "Chilton", 1));
+            library.addMember(new Member("M1", "Ann Lee", "ann@example.com", "1"));
+            for (int i = 0; i < TransactionHistory.SEGMENT_SIZE + 300; i++) {
+                library.checkoutBook("M1", "B1");
+                library.returnBook("M1", "B1");
+            }
+            Check.that(library.snapshotNow(), "snapshot sealing segments");
+            List<Transaction> all = library.getTransactions();
+
+            List<Transaction> paged = new ArrayList<>();
+            int cursor = Page.FIRST;
+            while (cursor >= 0) {
+                Page<Transaction> page = library.getTransactionsPage(cursor, 700);
+                paged.addAll(page.getItems());
+                cursor = page.getNextCursor();
+            }
+            Check.equal(render(all), render(paged), "paged history");
+            Check.equal(all.size(), (int) library.streamTransactions().count(), "streamed history");
+
+            for (int i = 0; i < all.size(); i += 97) {
+                LocalDateTime time = all.get(i).getTimestamp();
+                int expected = 0;
+                while (all.get(expected).getTimestamp().isBefore(time)) {
+                    expected++;
+                }
+                Check.equal(expected, library.findTransactionCursor(time), "cursor at row " + i);
+            }
+            Check.equal(0, library.findTransactionCursor(LocalDateTime.MIN), "cursor before everything");
+            Check.equal(all.size(), library.findTransactionCursor(LocalDateTime.MAX), "cursor after everything");
+        } finally {
+            library.close();
+        }
+    }
+
+    // The type and timestamp columns give back the same rows and counts once sealed and
+    // after reopening
+    static void testColumnsKeepTypesAndTimestamps() throws Exception {
+        Path directory = Check.tempDirectory();
+        String snapshot = directory.resolve("lib.dat").toString();
+        String log = directory.resolve("lib.wal").toString();
+        Library library = Library.openWithLog(snapshot, log, null);
+        library.startSnapshots(snapshot, 2, 0, 0);
+        library.addBook(new Book("B1", "Dune", "Frank Herbert", "Science Fiction", null, 1965, "Chilton", 3));
+        library.addMember(new Member("M1", "Ann Lee", "ann@example.com", "1"));
+        for (int i = 0; i < TransactionHistory.SEGMENT_SIZE + 500; i++) {
+            library.checkoutBook("M1", "B1");
+            if (i % 3 != 0) {
+                library.returnBook("M1", "B1");
+            }
+        }
+        List<String> before = render(library.getTransactions());
+        int checkouts = library.getTransactionCount(Transaction.Type.CHECKOUT);
+        int returns = library.getTransactionCount(Transaction.Type.RETURN);
+        Check.equal(before.size(), checkouts + returns, "counts by type");
+        Check.that(checkouts > returns, "more checkouts than returns");
+        Check.that(library.snapshotNow(), "snapshot sealing segments");
+        Check.equal(before, render(library.getTransactions()), "history after sealing");
+        Check.equal(checkouts, library.getTransactionCount(Transaction.Type.CHECKOUT), "checkouts after sealing");
+        library.close();
+
+        Library reopened = Library.openWithLog(snapshot, log, null);
+        try {
+            Check.equal(before, render(reopened.getTransactions()), "history after reopening");
+            Check.equal(checkouts, reopened.getTransactionCount(Transaction.Type.CHECKOUT), "checkouts after reopening");
+            Check.equal(returns, reopened.getTransactionCount(Transaction.Type.RETURN), "returns after reopening");
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private static boolean matches(Transaction transaction, Transaction.Type type, String text) {
+        if (type != null && transaction.getType() != type) {
+            return false;
+        }
+        String needle = text.toLowerCase(Locale.ROOT);
+        return transaction.getBook().getTitle().toLowerCase(Locale.ROOT).contains(needle)
+                || transaction.getMember().getName().toLowerCase(Locale.ROOT).contains(needle)
+                || transaction.getType().toString().toLowerCase(Locale.ROOT).contains(needle)
+                || transaction.getTimestamp().toString().toLowerCase(Locale.ROOT).contains(needle);
+    }
+
+    private static List<String> render(List<Transaction> transactions) {
+        List<String> rendered = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            rendered.add(transaction.getType() + " " + transaction.getMember().getId() + " "
+                    + transaction.getBook().getId() + " " + transaction.getTimestamp());
+        }
+        return rendered;
+    }
+}
\ No newline at end of file
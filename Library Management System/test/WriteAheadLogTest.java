@@ -0,0 +1,256 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class WriteAheadLogTest {
+    // Nothing is snapshotted, so everything below comes back from the log alone
+    static void testReplayRestoresCatalogAndCirculation() throws Exception {
+        Path directory = Check.tempDirectory();
+        String snapshot = directory.resolve("lib.dat").toString();
+        String log = directory.resolve("lib.wal").toString();
+
+        Library library = Library.openWithLog(snapshot, log, null);
+        library.addBook(new Book("B1", "Dune", "Frank Herbert", "Science Fiction", null, 1965, "Chilton", 2));
+        library.addBook(new Book("B2", "Emma", "Jane Austen", "Classic", null, 1815, "John Murray", 1));
+        library.addMember(new Member("M1", "Ann", "ann@example.com", "1"));
+        library.addMember(new Member("M2", "Bob", "bob@example.com", "2"));
+        library.checkoutBook("M1", "B1");
+        library.checkoutBook("M2", "B2");
+        library.returnBook("M2", "B2");
+        library.removeMember(library.findMemberById("M2"));
+        library.close();
+
+        Library replayed = Library.openWithLog(snapshot, log, null);
+        try {
+            Check.equal(2, replayed.getBookCount(), "books");
+            Check.equal(1, replayed.getMemberCount(), "members");
+            Check.equal(3, replayed.getTransactionCount(), "transactions");
+            Check.equal(1, replayed.findBookById("B1").getAvailableCopies(), "copies left of B1");
+            Check.equal(1, replayed.findBookById("B2").getAvailableCopies(), "copies left of B2");
+            Check.equal("B1", replayed.findMemberById("M1").getBorrowedBooks().get(0).getId(), "M1 loan");
+        } finally {
+            replayed.close();
+        }
+    }
+
+    static void testBookEditsSurviveReplay() throws Exception {
+        Path directory = Check.tempDirectory();
+        String snapshot = directory.resolve("lib.dat").toString();
+        String log = directory.resolve("lib.wal").toString();
+
+        Library library = Library.openWithLog(snapshot, log, null);
+        library.addBook(new Book("B1", "Dune", "Frank Herbert", "Science Fiction", null, 1965, "Chilton", 2));
+        library.addMember(new Member("M1", "Ann", "ann@example.com", "1"));
+        library.checkoutBook("M1", "B1");
+        Book book = library.findBookById("B1");
+        book.setIsbn("978-0441013593");
+        book.setPublicationYear(1990);
+        book.setPublisher("Ace");
+        book.setTotalCopies(4);
+        library.close();
+
+        Library replayed = Library.openWithLog(snapshot, log, null);
+        try {
+            Book restored = replayed.findBookById("B1");
+            Check.equal("978-0441013593", restored.getIsbn(), "ISBN");
+            Check.equal(1990, restored.getPublicationYear(), "year");
+            Check.equal("Ace", restored.getPublisher(), "publisher");
+            Check.equal(4, restored.getTotalCopies(), "total copies");
+            Check.equal(3, restored.getAvailableCopies(), "available copies");
+            Check.that(replayed.findBookByIsbn("9780441013593") == restored, "ISBN index updated on replay");
+        } finally {
+            replayed.close();
+        }
+    }
+
+    // A crash in the middle of an append leaves part of a record at the end of the log
+    static void testTornTailIsTruncated() throws Exception {
+        Path log = Check.tempDirectory().resolve("lib.wal");
+        WriteAheadLog wal = WriteAheadLog.open(log, 0);
+        wal.logRemoveMember("M1");
+        wal.awaitDurable(wal.logRemoveMember("M2"));
+        wal.close();
+        Path segment = segments(log).get(0);
+        Files.write(segment, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        Check.equal(Arrays.asList("M1", "M2"), removedMembers(log), "records before the torn tail");
+        wal = WriteAheadLog.open(log, 0);
+        wal.awaitDurable(wal.logRemoveMember("M3"));
+        wal.close();
+        Check.equal(Arrays.asList("M1", "M2", "M3"), removedMembers(log), "records appended after truncating");
+    }
+
+    // Damage to a record with durable records after it must not be skipped or repaired
+    static void testCorruptionBeforeLaterSegmentsFails() throws Exception {
+        Path directory = Check.tempDirectory();
+        Path log = directory.resolve("lib.wal");
+        WriteAheadLog wal = WriteAheadLog.open(log, 0);
+        wal.logRemoveMember("M1");
+        wal.awaitDurable(wal.logRemoveMember("M2"));
+        wal.rotate();
+        wal.awaitDurable(wal.logRemoveMember("M3"));
+        wal.close();
+        List<Path> segments = segments(log);
+        Check.equal(2, segments.size(), "segments");
+        flipLastByte(segments.get(0));
+        long secondSize = Files.size(segments.get(1));
+
+        expectCorrupt(() -> WriteAheadLog.replay(log, 0, new RecordingHandler()), "replay");
+        expectCorrupt(() -> WriteAheadLog.open(log, 0), "open");
+        Check.equal(segments, segments(log), "segments after failing to open");
+        Check.equal(secondSize, Files.size(segments.get(1)), "size of the later segment");
+
+        // The library still opens, without a log, and says why
+        List<IOException> failures = new ArrayList<>();
+        Library library = Library.openWithLog(directory.resolve("lib.dat").toString(), log.toString(),
+                new LibraryListener() {
+                    @Override
+                    public void logFailed(String filename, IOException error) {
+                        failures.add(error);
+                    }
+                });
+        library.close();
+        Check.equal(1, failures.size(), "log failures reported");
+        Check.equal(segments, segments(log), "segments after opening the library");
+    }
+
+    static void testCorruptionInsideLastSegmentFails() throws Exception {
+        Path log = Check.tempDirectory().resolve("lib.wal");
+        WriteAheadLog wal = WriteAheadLog.open(log, 0);
+        wal.logRemoveMember("M1");
+        wal.awaitDurable(wal.logRemoveMember("M2"));
+        wal.close();
+        Path segment = segments(log).get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        // The first record's LSN, with the whole second record still after it
+        bytes[8] ^= 1;
+        Files.write(segment, bytes);
+
+        expectCorrupt(() -> WriteAheadLog.open(log, 0), "open");
+        Check.equal(bytes.length, (int) Files.size(segment), "segment size after failing to open");
+    }
+
+    // Once the log fails, changes are refused before anything is modified and reported to
+    // the listener; the one in flight when it failed stays made. The failure is a real
+    // write error: the log rotates onto a segment that is a link to /dev/full.
+    static void testChangesRefusedAfterLogFailure() throws Exception {
+        Path full = Paths.get("/dev/full");
+        if (!Files.exists(full)) {
+            return;
+        }
+        Path directory = Check.tempDirectory();
+        String log = directory.resolve("lib.wal").toString();
+        List<IOException> failures = Collections.synchronizedList(new ArrayList<>());
+        LibraryListener listener = new LibraryListener() {
+            @Override
+            public void logFailed(String filename, IOException error) {
+                failures.add(error);
+            }
+        };
+        Library library = Library.openWithLog(directory.resolve("lib.dat").toString(), log, listener);
+        try {
+            library.addBook(new Book("B1", "Dune", "Frank Herbert", "Science Fiction", null, 1965, "Chilton", 2));
+            library.addMember(new Member("M1", "Ann", "ann@example.com", "1"));
+            Files.createSymbolicLink(directory.resolve(String.format("lib.wal.%020d", 3)), full);
+            Check.that(library.saveToFile(directory.resolve("lib.dat").toString()), "save");
+
+            Check.equal(CirculationStatus.SUCCESS, library.checkoutBook("M1", "B1"), "checkout as the log fails");
+            Check.equal(1, failures.size(), "failure reported");
+            Book book = library.findBookById("B1");
+            Check.equal(1, book.getAvailableCopies(), "copies after the failed flush");
+
+            Check.equal(CirculationStatus.LOG_FAILED, library.returnBook("M1", "B1"), "return");
+            Check.equal(Arrays.asList(CirculationStatus.LOG_FAILED),
+                    library.checkoutBooks("M1", Arrays.asList("B1")), "batch checkout");
+            Check.equal(1, book.getAvailableCopies(), "copies after refused circulation");
+            Check.equal(1, library.findMemberById("M1").getBorrowedBooks().size(), "loans");
+            Check.that(!library.addBook(new Book("B2", "Emma", "Jane Austen", "Classic")), "book added");
+            Check.that(library.findBookById("B2") == null, "refused book in the catalog");
+            Check.that(!library.removeMember(library.findMemberById("M1")), "member removed");
+            Check.that(library.findMemberById("M1") != null, "refused removal applied");
+            try {
+                book.setPublisher("Ace");
+                throw new AssertionError("edit accepted");
+            } catch (UncheckedIOException e) {
+                Check.equal("Chilton", book.getPublisher(), "publisher after a refused edit");
+            }
+            Check.equal(6, failures.size(), "refusals reported");
+        } finally {
+            library.close();
+        }
+    }
+
+    private interface LogAction {
+        void run() throws IOException;
+    }
+
+    private static void expectCorrupt(LogAction action, String what) {
+        try {
+            action.run();
+        } catch (IOException e) {
+            Check.that(e.getMessage().contains("Corrupt"), what + ": " + e.getMessage());
+            return;
+        }
+        throw new AssertionError(what + " accepted a corrupt log");
+    }
+
+    private static List<Path> segments(Path log) throws IOException {
+        String prefix = log.getFileName() + ".";
+        try (Stream<Path> files = Files.list(log.getParent())) {
+            return files.filter(path -> path.getFileName().toString().startsWith(prefix))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static void flipLastByte(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+    }
+
+    private static List<String> removedMembers(Path log) throws IOException {
+        RecordingHandler handler = new RecordingHandler();
+        WriteAheadLog.replay(log, 0, handler);
+        return handler.removedMembers;
+    }
+
+    private static class RecordingHandler implements WriteAheadLog.Handler {
+        final List<String> removedMembers = new ArrayList<>();
+
+        @Override
+        public void addBook(Book book) {
+        }
+
+        @Override
+        public void removeBook(String bookId) {
+        }
+
+        @Override
+        public void updateBook(String bookId, String isbn, int publicationYear, String publisher, int totalCopies) {
+        }
+
+        @Override
+        public void addMember(Member member) {
+        }
+
+        @Override
+        public void removeMember(String memberId) {
+            removedMembers.add(memberId);
+        }
+
+        @Override
+        public void circulate(Transaction.Type type, String memberId, String bookId, LocalDateTime timestamp) {
+        }
+    }
+}
\ No newline at end of file